@@ -1,6 +1,6 @@
 plugins {
     java
-    // id("me.champeau.jmh") version "0.6.6"
+    id("me.champeau.jmh") version "0.7.3"
     `maven-publish`
     signing
 }
@@ -19,13 +19,20 @@ dependencies {
 
 
 group = "io.github.mysto"
-version = "1.0.1"
+version = "2.0.0"
 
 java {
     withJavadocJar()
     withSourcesJar()
 }
 
+jmh {
+    jmhVersion.set("1.37")
+    resultFormat.set("JSON")
+    // e.g. gradle jmh -PjmhIncludes=FF3CipherPerf.encrypt
+    (findProperty("jmhIncludes") as String?)?.let { includes.set(listOf(it)) }
+}
+
 tasks.withType<JavaCompile> {
     options.encoding = "UTF-8"
 }
@@ -43,7 +50,7 @@ publishing {
         create<MavenPublication>("mavenJava") {
             groupId = "io.github.mysto"
             artifactId = "ff3"
-            version = "1.0.1"
+            version = "2.0.0"
 
             from(components["java"])
             versionMapping {
@@ -100,3 +107,130 @@ tasks.javadoc {
     }
 }
 
+
+// Allocation profiling: run FF3CipherAllocationPerf with the gc profiler and compare bytes per
+// operation with the checked-in baseline. Refresh the baseline with -PupdateBaseline.
+
+/** JMH JSON results as benchmark[params] to metric name to score, "score" being the primary metric */
+@Suppress("UNCHECKED_CAST")
+fun readJmhResults(results: File): Map<String, Map<String, Double>> {
+    val runs = groovy.json.JsonSlurper().parse(results) as List<Map<String, Any?>>
+    return runs.associate { run ->
+        val params = (run["params"] as Map<String, Any?>?)
+            ?.toSortedMap()?.entries?.joinToString(",", "[", "]") { "${it.key}=${it.value}" } ?: ""
+        val metrics = mutableMapOf<String, Double>()
+        metrics["score"] = ((run["primaryMetric"] as Map<String, Any?>)["score"] as Number).toDouble()
+        (run["secondaryMetrics"] as Map<String, Map<String, Any?>>?)?.forEach { (name, metric) ->
+            metrics[name] = (metric["score"] as Number).toDouble()
+        }
+        (run["benchmark"] as String).removePrefix("com.privacylogistics.") + params to metrics
+    }
+}
+
+/** Allocation is close to deterministic: a gate allows this fraction of growth over the baseline */
+val allocationTolerance = 0.10
+
+/** Bytes per operation of profiler noise a gate allows on top of allocationTolerance */
+val allocationNoiseBytes = 8.0
+
+/** The bound a baseline value puts on a metric, and whether measurements above it are the regressions */
+class Bound(val limit: (Double) -> Double, val higherIsWorse: Boolean)
+
+val allocationBound = Bound({ it * (1 + allocationTolerance) + allocationNoiseBytes }, higherIsWorse = true)
+
+/**
+ * Compare measured metrics with a baseline file of the same shape, benchmark to metric name to
+ * value, and fail listing every metric past its bound. With -PupdateBaseline the baseline is
+ * rewritten from the measurements instead.
+ */
+fun Task.compareWithBaseline(title: String, measured: Map<String, Map<String, Double>>, baselineFile: File,
+                             bounds: Map<String, Bound>) {
+    if (project.hasProperty("updateBaseline")) {
+        baselineFile.writeText(groovy.json.JsonOutput.prettyPrint(groovy.json.JsonOutput.toJson(
+            measured.toSortedMap().mapValues { (_, metrics) -> metrics.mapValues { Math.round(it.value) } })) + "\n")
+        logger.lifecycle("Wrote ${baselineFile}")
+        return
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    val baseline = groovy.json.JsonSlurper().parse(baselineFile) as Map<String, Map<String, Number>>
+    val failures = mutableListOf<String>()
+    measured.toSortedMap().forEach { (name, metrics) ->
+        val base = baseline[name]
+        val problems = if (base == null) emptyList() else bounds.mapNotNull { (metric, bound) ->
+            val value = metrics.getValue(metric)
+            val limit = bound.limit(base.getValue(metric).toDouble())
+            val regressed = if (bound.higherIsWorse) value > limit else value < limit
+            if (regressed) "%s %.1f %s %.1f".format(metric, value, if (bound.higherIsWorse) ">" else "<", limit) else null
+        }
+        problems.forEach { failures += "$name: $it" }
+        val status = when {
+            base == null -> "no baseline"
+            problems.isEmpty() -> "ok"
+            else -> "REGRESSED"
+        }
+        val values = bounds.keys.joinToString("") { "%10.1f %s".format(metrics.getValue(it), it) }
+        logger.lifecycle("%-60s%s  %s".format(name, values, status))
+    }
+    if (failures.isNotEmpty()) {
+        throw GradleException("$title regressed:\n" + failures.joinToString("\n"))
+    }
+}
+
+val allocationResults = layout.buildDirectory.file("results/jmh/allocation.json")
+val allocationBaseline = layout.projectDirectory.file("src/jmh/baselines/allocation.json")
+
+val jmhAllocation by tasks.registering(JavaExec::class) {
+    group = "benchmark"
+    description = "Runs FF3CipherAllocationPerf with the JMH gc profiler."
+    classpath = files(tasks.named("jmhJar"))
+    mainClass.set("org.openjdk.jmh.Main")
+    args("FF3CipherAllocationPerf", "-prof", "gc", "-rf", "json", "-rff", allocationResults.get().asFile.path)
+    outputs.file(allocationResults)
+    outputs.upToDateWhen { false }
+}
+
+tasks.register("checkAllocation") {
+    group = "verification"
+    description = "Fails if bytes allocated per operation exceed src/jmh/baselines/allocation.json."
+    dependsOn(jmhAllocation)
+    doLast {
+        val measured = readJmhResults(allocationResults.get().asFile).mapValues { (_, metrics) ->
+            mapOf("B/op" to metrics.getValue("gc.alloc.rate.norm"))
+        }
+        compareWithBaseline("Allocation", measured, allocationBaseline.asFile, mapOf("B/op" to allocationBound))
+    }
+}
+
+// Performance regression gate: run the key cases of FF3CipherGatePerf and fail when throughput drops
+// or allocation grows past a tolerance versus the checked-in baseline. Throughput depends on the
+// machine, so record the baseline where the gate runs, with -PupdateBaseline. The throughput
+// tolerance can be set with -PperfTolerance=0.25.
+
+val perfGateResults = layout.buildDirectory.file("results/jmh/perf-gate.json")
+val perfGateBaseline = layout.projectDirectory.file("src/jmh/baselines/perf-gate.json")
+
+val jmhPerfGate by tasks.registering(JavaExec::class) {
+    group = "benchmark"
+    description = "Runs FF3CipherGatePerf with the JMH gc profiler."
+    classpath = files(tasks.named("jmhJar"))
+    mainClass.set("org.openjdk.jmh.Main")
+    args("FF3CipherGatePerf", "-prof", "gc", "-rf", "json", "-rff", perfGateResults.get().asFile.path)
+    outputs.file(perfGateResults)
+    outputs.upToDateWhen { false }
+}
+
+tasks.register("perfGate") {
+    group = "verification"
+    description = "Fails if throughput or allocation regress versus src/jmh/baselines/perf-gate.json."
+    dependsOn(jmhPerfGate)
+    doLast {
+        val measured = readJmhResults(perfGateResults.get().asFile).mapValues { (_, metrics) ->
+            mapOf("ops/ms" to metrics.getValue("score"), "B/op" to metrics.getValue("gc.alloc.rate.norm"))
+        }
+        val tolerance = (findProperty("perfTolerance") as String?)?.toDouble() ?: 0.25
+        compareWithBaseline("Performance", measured, perfGateBaseline.asFile, mapOf(
+            "ops/ms" to Bound({ it * (1 - tolerance) }, higherIsWorse = false),
+            "B/op" to allocationBound))
+    }
+}
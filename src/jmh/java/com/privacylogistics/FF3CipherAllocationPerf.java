@@ -0,0 +1,138 @@
+package com.privacylogistics;
+
+/**
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes allocated per operation for each engine and API variant, run with JMH's gc profiler and
+ * checked against src/jmh/baselines/allocation.json by: gradle checkAllocation
+ *
+ * Radix 10 length 16 runs on the 64-bit engine and length 40 on the 128-bit engine.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class FF3CipherAllocationPerf {
+
+    static final int BULK = 1024;
+
+    /**
+     * A radix 10 cipher with inputs as strings, characters and bytes
+     */
+    @State(Scope.Thread)
+    public static class CipherState {
+
+        @Param({"16", "40"})
+        public int length;
+
+        FF3Cipher cipher;
+        String[] plaintexts;
+        String[] ciphertexts;
+        char[][] chars;
+        byte[][] bytes;
+        char[] out;
+        String[] bulkOut;
+        CachingFF3Cipher cached;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            this.cipher = new FF3Cipher(FF3CipherPerf.KEY, FF3CipherPerf.TWEAK_FF3);
+            this.plaintexts = FF3CipherPerf.randomInputs(FF3Cipher.DIGITS, this.length, FF3CipherPerf.INPUTS, 42);
+            this.ciphertexts = this.cipher.encryptAll(this.plaintexts);
+            this.chars = new char[FF3CipherPerf.INPUTS][];
+            this.bytes = new byte[FF3CipherPerf.INPUTS][];
+            for (int k = 0; k < FF3CipherPerf.INPUTS; k++) {
+                this.chars[k] = this.plaintexts[k].toCharArray();
+                this.bytes[k] = this.plaintexts[k].getBytes(StandardCharsets.US_ASCII);
+            }
+            this.out = new char[this.length];
+            this.bulkOut = new String[BULK];
+
+            // every lookup hits, with room to spare so no segment of the cache overflows
+            this.cached = new CachingFF3Cipher(this.cipher, 4 * FF3CipherPerf.INPUTS);
+            for (String plaintext : this.plaintexts) {
+                this.cached.encrypt(plaintext);
+            }
+        }
+    }
+
+    /**
+     * Numbers of the widest radix 10 width that encryptLong supports
+     */
+    @State(Scope.Thread)
+    public static class LongState {
+
+        FF3Cipher cipher;
+        long[] values;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            this.cipher = new FF3Cipher(FF3CipherPerf.KEY, FF3CipherPerf.TWEAK_FF3);
+            this.values = new long[FF3CipherPerf.INPUTS];
+            for (int k = 0; k < this.values.length; k++) {
+                this.values[k] = (k * 0x9E3779B97F4A7C15L >>> 1) % 1000000000000000000L;
+            }
+        }
+    }
+
+    @Benchmark
+    public String encryptString(CipherState state, FF3CipherPerf.Cursor cursor) throws Exception {
+        return state.cipher.encrypt(state.plaintexts[cursor.next()]);
+    }
+
+    @Benchmark
+    public String decryptString(CipherState state, FF3CipherPerf.Cursor cursor) throws Exception {
+        return state.cipher.decrypt(state.ciphertexts[cursor.next()]);
+    }
+
+    @Benchmark
+    public char[] encryptChars(CipherState state, FF3CipherPerf.Cursor cursor) throws Exception {
+        char[] in = state.chars[cursor.next()];
+        state.cipher.encrypt(in, 0, in.length, state.out, 0);
+        return state.out;
+    }
+
+    @Benchmark
+    public byte[] encryptBytesInPlace(CipherState state, FF3CipherPerf.Cursor cursor) throws Exception {
+        byte[] in = state.bytes[cursor.next()];
+        state.cipher.encrypt(in, 0, in.length, in, 0);
+        return in;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK)
+    public String[] encryptBulk(CipherState state) throws Exception {
+        state.cipher.encrypt(state.plaintexts, state.bulkOut);
+        return state.bulkOut;
+    }
+
+    @Benchmark
+    public String encryptCachedHit(CipherState state, FF3CipherPerf.Cursor cursor) throws Exception {
+        return state.cached.encrypt(state.plaintexts[cursor.next()]);
+    }
+
+    @Benchmark
+    public long encryptLong(LongState state, FF3CipherPerf.Cursor cursor) throws Exception {
+        return state.cipher.encryptLong(state.values[cursor.next()], 18);
+    }
+}
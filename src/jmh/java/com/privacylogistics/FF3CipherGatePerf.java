@@ -0,0 +1,66 @@
+package com.privacylogistics;
+
+/**
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The key cases of the performance regression gate, checked against src/jmh/baselines/perf-gate.json
+ * by: gradle perfGate
+ *
+ * Each scenario is radix/length/tweak type.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class FF3CipherGatePerf {
+
+    @State(Scope.Benchmark)
+    public static class Scenario {
+
+        @Param({"10/16/FF3", "62/24/FF3", "10/16/FF3-1"})
+        public String scenario;
+
+        FF3Cipher cipher;
+        String[] plaintexts;
+        String[] ciphertexts;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            String[] parts = this.scenario.split("/");
+            String alphabet = FF3CipherPerf.alphabet(parts[0]);
+            String tweak = "FF3".equals(parts[2]) ? FF3CipherPerf.TWEAK_FF3 : FF3CipherPerf.TWEAK_FF3_1;
+            this.cipher = new FF3Cipher(FF3CipherPerf.KEY, tweak, alphabet);
+            this.plaintexts = FF3CipherPerf.randomInputs(alphabet, Integer.parseInt(parts[1]), FF3CipherPerf.INPUTS, 42);
+            this.ciphertexts = this.cipher.encryptAll(this.plaintexts);
+        }
+    }
+
+    @Benchmark
+    public String encrypt(Scenario state, FF3CipherPerf.Cursor cursor) throws Exception {
+        return state.cipher.encrypt(state.plaintexts[cursor.next()]);
+    }
+
+    @Benchmark
+    public String decrypt(Scenario state, FF3CipherPerf.Cursor cursor) throws Exception {
+        return state.cipher.decrypt(state.ciphertexts[cursor.next()]);
+    }
+}
@@ -17,56 +17,159 @@ package com.privacylogistics;
  * See the License for the specific language governing permissions and limitations under the License.
  */
 import org.openjdk.jmh.annotations.*;
-import java.util.ArrayList;
 
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded encrypt and decrypt throughput over radix, message length and tweak type, with
+ * cipher construction measured separately. Run with: gradle jmh
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
 public class FF3CipherPerf {
 
-    /*public static class CircularList<E> extends ArrayList<E> {
-        @Override
-        public E get(int index) {
-            return super.get(index % size());
+    static final String KEY = "EF4359D8D580AA4F7F036D6F04FC6A94";
+    static final String TWEAK_FF3 = "D8E7920AFA330A73";
+    static final String TWEAK_FF3_1 = "D8E7920AFA330A";
+
+    /** the number of distinct inputs cycled through, so branch predictors do not learn one value */
+    static final int INPUTS = 1024;
+
+    /**
+     * Return the alphabet for a radix parameter, "custom" is a non-ASCII alphabet
+     * @param radix        10, 26, 36, 62, 64 or custom
+     * @return             the alphabet
+     */
+    static String alphabet(String radix) {
+        switch (radix) {
+            case "10":
+                return FF3Cipher.DIGITS;
+            case "26":
+                return FF3Cipher.ASCII_LOWERCASE;
+            case "36":
+                return FF3Cipher.DIGITS + FF3Cipher.ASCII_LOWERCASE;
+            case "62":
+                return FF3Cipher.DIGITS + FF3Cipher.ASCII_LOWERCASE + FF3Cipher.ASCII_UPPERCASE;
+            case "64":
+                return FF3Cipher.DIGITS + FF3Cipher.ASCII_LOWERCASE + FF3Cipher.ASCII_UPPERCASE + "+/";
+            case "custom":
+                return "⁰¹²³⁴⁵⁶⁷⁸⁹";
+            default:
+                throw new IllegalArgumentException("unknown radix " + radix);
         }
-    }*/
+    }
 
-    /*
-     * Benchmark Test
-     * ToDo: use non-uniform random strings
+    /**
+     * Return a message length for a length parameter
+     * @param length       min, mid or max, relative to the cipher's bounds
+     * @param minLen       the cipher's minimum length
+     * @param maxLen       the cipher's maximum length
+     * @return             the length
      */
-    /*@State(Scope.Thread)
-    public static class MyState {
+    static int length(String length, int minLen, int maxLen) {
+        switch (length) {
+            case "min":
+                return minLen;
+            case "mid":
+                return (minLen + maxLen) / 2;
+            case "max":
+                return maxLen;
+            default:
+                throw new IllegalArgumentException("unknown length " + length);
+        }
+    }
+
+    /**
+     * Random strings of one length in an alphabet, from a fixed seed
+     */
+    static String[] randomInputs(String alphabet, int length, int count, long seed) {
+        Random random = new Random(seed);
+        String[] inputs = new String[count];
+        char[] x = new char[length];
+        for (int k = 0; k < count; k++) {
+            for (int j = 0; j < length; j++) {
+                x[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+            }
+            inputs[k] = new String(x);
+        }
+        return inputs;
+    }
+
+    /**
+     * A cipher with its inputs and their ciphertexts, shared by all benchmark threads
+     */
+    @State(Scope.Benchmark)
+    public static class CipherState {
+
+        @Param({"10", "26", "36", "62", "64", "custom"})
+        public String radix;
+
+        @Param({"min", "mid", "max"})
+        public String length;
+
+        @Param({"FF3", "FF3-1"})
+        public String tweakType;
+
+        FF3Cipher cipher;
+        String[] plaintexts;
+        String[] ciphertexts;
 
         @Setup(Level.Trial)
-        public void doSetup() {
-            //list = new CircularList<String>();
-            alist.add("12345678");
-            alist.add("23478436");
-            alist.add("99472512");
-            alist.add("28830179");
-            alist.add("23837374");
+        public void setup() throws Exception {
+            String alphabet = alphabet(this.radix);
+            this.cipher = new FF3Cipher(KEY, "FF3".equals(this.tweakType) ? TWEAK_FF3 : TWEAK_FF3_1, alphabet);
+            int n = length(this.length, this.cipher.minLen(), this.cipher.maxLen());
+            this.plaintexts = randomInputs(alphabet, n, INPUTS, 42);
+            this.ciphertexts = this.cipher.encryptAll(this.plaintexts);
         }
-        //public CircularList<String> list;
-    }*/
+    }
+
+    /**
+     * The position of a benchmark thread in the inputs
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int next() {
+            return this.next++ & (INPUTS - 1);
+        }
+    }
+
+    @Benchmark
+    public String encrypt(CipherState state, Cursor cursor) throws Exception {
+        return state.cipher.encrypt(state.plaintexts[cursor.next()]);
+    }
 
     @Benchmark
-    @Fork(1)
-    @Warmup(iterations = 3)
-    public String testEncrypt() throws Exception {
-        String key = "EF4359D8D580AA4F7F036D6F04FC6A94";
-        String tweak = "D8E7920AFA330A73";
-        String plaintext = alist.get(n++%5);
-        FF3Cipher c = new FF3Cipher(key, tweak, 10);
-        return c.encrypt(plaintext);
+    public String decrypt(CipherState state, Cursor cursor) throws Exception {
+        return state.cipher.decrypt(state.ciphertexts[cursor.next()]);
     }
 
-    public static int n = 0;
-    //public static CircularList<String> list = new CircularList<String>();
-    public static ArrayList<String> alist = new ArrayList<String>();
-    static {
-        alist = new ArrayList<String>();
-        alist.add("12345678");
-        alist.add("23478436");
-        alist.add("99472512");
-        alist.add("28830179");
-        alist.add("23837374");
+    /**
+     * The parameters of cipher construction, which does not depend on the message length
+     */
+    @State(Scope.Benchmark)
+    public static class ConstructionState {
+
+        @Param({"10", "36", "62"})
+        public String radix;
+
+        String alphabet;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            this.alphabet = alphabet(this.radix);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public FF3Cipher construct(ConstructionState state) {
+        return new FF3Cipher(KEY, TWEAK_FF3, state.alphabet);
     }
 }
@@ -0,0 +1,152 @@
+package com.privacylogistics;
+
+/**
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-threaded encrypt throughput, comparing one cipher shared by all threads, one cipher per
+ * thread, and a registry lookup on every call. Each nested class runs the same benchmarks with a
+ * different thread count, so the results show where throughput stops scaling:
+ *
+ * gradle jmh -PjmhIncludes=FF3CipherScalingPerf
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public abstract class FF3CipherScalingPerf {
+
+    /**
+     * Plaintexts shared by all threads
+     */
+    @State(Scope.Benchmark)
+    public static class Inputs {
+
+        String[] plaintexts;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            this.plaintexts = FF3CipherPerf.randomInputs(FF3Cipher.DIGITS, 16, FF3CipherPerf.INPUTS, 42);
+        }
+    }
+
+    /**
+     * One cipher used by every thread
+     */
+    @State(Scope.Benchmark)
+    public static class SharedCipher {
+
+        FF3Cipher cipher;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            this.cipher = new FF3Cipher(FF3CipherPerf.KEY, FF3CipherPerf.TWEAK_FF3);
+        }
+    }
+
+    /**
+     * A cipher for each thread
+     */
+    @State(Scope.Thread)
+    public static class ThreadCipher {
+
+        FF3Cipher cipher;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            this.cipher = new FF3Cipher(FF3CipherPerf.KEY, FF3CipherPerf.TWEAK_FF3);
+        }
+    }
+
+    /**
+     * A registry holding a cipher for every tenant, each call looks up the cipher of a tenant
+     */
+    @State(Scope.Benchmark)
+    public static class Registry {
+
+        @Param({"16", "1024"})
+        public int tenants;
+
+        FF3CipherRegistry registry;
+        String[] keyIds;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Map<String, String> keys = new HashMap<>();
+            this.keyIds = new String[this.tenants];
+            for (int t = 0; t < this.tenants; t++) {
+                this.keyIds[t] = "tenant" + t;
+                keys.put(this.keyIds[t], String.format("%032X", t + 1));
+            }
+            this.registry = new FF3CipherRegistry(keys::get, FF3CipherPerf.TWEAK_FF3, this.tenants);
+            for (String keyId : this.keyIds) {
+                this.registry.get(keyId);
+            }
+        }
+    }
+
+    @Benchmark
+    public String sharedCipher(SharedCipher shared, Inputs inputs, FF3CipherPerf.Cursor cursor) throws Exception {
+        return shared.cipher.encrypt(inputs.plaintexts[cursor.next()]);
+    }
+
+    @Benchmark
+    public String perThreadCipher(ThreadCipher own, Inputs inputs, FF3CipherPerf.Cursor cursor) throws Exception {
+        return own.cipher.encrypt(inputs.plaintexts[cursor.next()]);
+    }
+
+    @Benchmark
+    public String registryLookup(Registry registry, Inputs inputs, FF3CipherPerf.Cursor cursor) throws Exception {
+        int j = cursor.next();
+        FF3Cipher cipher = registry.registry.get(registry.keyIds[j % registry.tenants]);
+        return cipher.encrypt(inputs.plaintexts[j]);
+    }
+
+    @Threads(1)
+    public static class Threads1 extends FF3CipherScalingPerf {
+    }
+
+    @Threads(2)
+    public static class Threads2 extends FF3CipherScalingPerf {
+    }
+
+    @Threads(4)
+    public static class Threads4 extends FF3CipherScalingPerf {
+    }
+
+    @Threads(8)
+    public static class Threads8 extends FF3CipherScalingPerf {
+    }
+
+    @Threads(16)
+    public static class Threads16 extends FF3CipherScalingPerf {
+    }
+
+    @Threads(32)
+    public static class Threads32 extends FF3CipherScalingPerf {
+    }
+
+    @Threads(64)
+    public static class Threads64 extends FF3CipherScalingPerf {
+    }
+}
@@ -0,0 +1,110 @@
+package com.privacylogistics;
+
+/**
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encrypt throughput over realistic inputs from Workload: mixed-length values drawn with Zipfian
+ * skew, spread over columns with their own tweaks. The cached variant shows how the hit rate of a
+ * token cache follows the skew:
+ *
+ * gradle jmh -PjmhIncludes=FF3CipherWorkloadPerf
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FF3CipherWorkloadPerf {
+
+    /** the number of draws in a stream, a power of two */
+    static final int STREAM = 1 << 16;
+
+    /** the number of distinct values drawn from */
+    static final int DISTINCT = 1 << 16;
+
+    static final int COLUMNS = 8;
+
+    /** the capacity of the token cache, a small fraction of the distinct values */
+    static final int CACHE_CAPACITY = 4096;
+
+    @State(Scope.Benchmark)
+    public static class Data {
+
+        @Param({"cards", "alphanumeric"})
+        public String workload;
+
+        /** the Zipf exponent, 0 is uniform */
+        @Param({"0", "0.99", "1.2"})
+        public double skew;
+
+        FF3Cipher cipher;
+        CachingFF3Cipher cachingCipher;
+        String[] values;
+        Tweak[] tweaks;
+        int[] columns;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Workload workload = new Workload(42);
+            String[] distinct;
+            if ("cards".equals(this.workload)) {
+                this.cipher = new FF3Cipher(FF3CipherPerf.KEY, FF3CipherPerf.TWEAK_FF3);
+                distinct = workload.cardNumbers(DISTINCT);
+            } else {
+                String alphabet = FF3CipherPerf.alphabet("62");
+                this.cipher = new FF3Cipher(FF3CipherPerf.KEY, FF3CipherPerf.TWEAK_FF3, alphabet);
+                distinct = workload.strings(alphabet, DISTINCT, 6, 24);
+            }
+            this.values = workload.skewed(distinct, STREAM, this.skew);
+            this.tweaks = workload.tweaks(COLUMNS, false);
+            this.columns = workload.zipf(STREAM, COLUMNS, 0);
+        }
+
+        @Setup(Level.Iteration)
+        public void resetCache() {
+            this.cachingCipher = new CachingFF3Cipher(this.cipher, CACHE_CAPACITY);
+        }
+    }
+
+    /**
+     * The position of a benchmark thread in the stream
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int next() {
+            return this.next++ & (STREAM - 1);
+        }
+    }
+
+    @Benchmark
+    public String encrypt(Data data, Cursor cursor) throws Exception {
+        int j = cursor.next();
+        return data.cipher.encrypt(data.values[j], data.tweaks[data.columns[j]]);
+    }
+
+    @Benchmark
+    public String encryptCached(Data data, Cursor cursor) throws Exception {
+        int j = cursor.next();
+        return data.cachingCipher.encrypt(data.values[j], data.tweaks[data.columns[j]]);
+    }
+}
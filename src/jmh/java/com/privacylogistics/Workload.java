@@ -0,0 +1,177 @@
+package com.privacylogistics;
+
+/**
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Reproducible benchmark inputs with realistic shape: card-number-like and alphanumeric values of
+ * mixed lengths, Zipfian-skewed draws over them, and a tweak per column. Every method draws from
+ * the one seeded generator, so a workload built with the same seed and calls is identical.
+ */
+final class Workload {
+
+    private final Random random;
+
+    Workload(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Distinct card-number-like values: Visa, Mastercard, Amex and Discover prefixes in rough
+     * market proportion, 15, 16 and 19 digits long, each with a valid Luhn check digit. A drawn
+     * duplicate is redrawn.
+     * @param count        the number of values
+     * @return             the values
+     */
+    String[] cardNumbers(int count) {
+        String[] values = new String[count];
+        HashSet<String> seen = new HashSet<>(2 * count);
+        for (int k = 0; k < count; ) {
+            int brand = this.random.nextInt(100);
+            String prefix;
+            int length;
+            if (brand < 45) {
+                prefix = "4";
+                length = 16;
+            } else if (brand < 50) {
+                prefix = "4";
+                length = 19;
+            } else if (brand < 80) {
+                prefix = "5" + (1 + this.random.nextInt(5));
+                length = 16;
+            } else if (brand < 93) {
+                prefix = this.random.nextBoolean() ? "34" : "37";
+                length = 15;
+            } else {
+                prefix = "6011";
+                length = 16;
+            }
+            String value = card(prefix, length);
+            if (seen.add(value)) {
+                values[k++] = value;
+            }
+        }
+        return values;
+    }
+
+    private String card(String prefix, int length) {
+        char[] x = new char[length];
+        prefix.getChars(0, prefix.length(), x, 0);
+        for (int j = prefix.length(); j < length - 1; j++) {
+            x[j] = (char) ('0' + this.random.nextInt(10));
+        }
+        // Luhn: double every second digit from the right, starting left of the check digit
+        int sum = 0;
+        for (int j = length - 2, i = 0; j >= 0; j--, i++) {
+            int d = x[j] - '0';
+            if ((i & 1) == 0) {
+                d *= 2;
+                if (d > 9) {
+                    d -= 9;
+                }
+            }
+            sum += d;
+        }
+        x[length - 1] = (char) ('0' + (10 - sum % 10) % 10);
+        return new String(x);
+    }
+
+    /**
+     * Distinct random values in an alphabet with lengths uniform in [minLen, maxLen]. A drawn
+     * duplicate is redrawn, so count must be well below the number of possible values.
+     * @param alphabet     the characters of the values
+     * @param count        the number of values
+     * @param minLen       the shortest length
+     * @param maxLen       the longest length
+     * @return             the values
+     */
+    String[] strings(String alphabet, int count, int minLen, int maxLen) {
+        String[] values = new String[count];
+        char[] x = new char[maxLen];
+        HashSet<String> seen = new HashSet<>(2 * count);
+        for (int k = 0; k < count; ) {
+            int length = minLen + this.random.nextInt(maxLen - minLen + 1);
+            for (int j = 0; j < length; j++) {
+                x[j] = alphabet.charAt(this.random.nextInt(alphabet.length()));
+            }
+            String value = new String(x, 0, length);
+            if (seen.add(value)) {
+                values[k++] = value;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Ranks in [0, n) drawn from a Zipf distribution, where rank r has weight 1 / (r + 1)^s.
+     * s = 0 is uniform, s around 1 is typical of real key popularity.
+     * @param count        the number of draws
+     * @param n            the number of ranks
+     * @param s            the skew exponent, not negative
+     * @return             the drawn ranks
+     */
+    int[] zipf(int count, int n, double s) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int r = 0; r < n; r++) {
+            sum += Math.pow(r + 1, -s);
+            cdf[r] = sum;
+        }
+        int[] ranks = new int[count];
+        for (int k = 0; k < count; k++) {
+            int r = Arrays.binarySearch(cdf, this.random.nextDouble() * sum);
+            ranks[k] = Math.min((r >= 0) ? r : -r - 1, n - 1);
+        }
+        return ranks;
+    }
+
+    /**
+     * A stream of values drawn with Zipfian skew from distinct values, the first value being the
+     * most frequent
+     * @param distinct     the values to draw from
+     * @param count        the length of the stream
+     * @param s            the skew exponent, see zipf
+     * @return             the stream
+     */
+    String[] skewed(String[] distinct, int count, double s) {
+        int[] ranks = zipf(count, distinct.length, s);
+        String[] values = new String[count];
+        for (int k = 0; k < count; k++) {
+            values[k] = distinct[ranks[k]];
+        }
+        return values;
+    }
+
+    /**
+     * A random tweak for each column
+     * @param columns      the number of columns
+     * @param ff3_1        true for 56-bit FF3-1 tweaks, false for 64-bit FF3 tweaks
+     * @return             the tweaks
+     */
+    Tweak[] tweaks(int columns, boolean ff3_1) {
+        Tweak[] tweaks = new Tweak[columns];
+        for (int c = 0; c < columns; c++) {
+            byte[] tweak = new byte[ff3_1 ? 7 : 8];
+            this.random.nextBytes(tweak);
+            tweaks[c] = Tweak.of(tweak);
+        }
+        return tweaks;
+    }
+}
@@ -0,0 +1,146 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Constant time lookup of a character's index in a cipher alphabet. Alphabets whose characters
+ * are all below DENSE_LIMIT use a dense table indexed by the character, others use a
+ * collision-free multiplicative hash found when the index is built.
+ */
+final class AlphabetIndex {
+
+    /**
+     * Build the index for an alphabet
+     * @param alphabet     the cipher alphabet, at most 2^15 distinct characters
+     */
+    AlphabetIndex(String alphabet) {
+        int maxChar = 0;
+        for (int j = 0; j < alphabet.length(); j++) {
+            maxChar = Math.max(maxChar, alphabet.charAt(j));
+        }
+
+        // Single-byte alphabets also get a table indexed by an unsigned byte, for ASCII buffers
+        if (maxChar <= 0xFF) {
+            this.bytes = new short[256];
+            Arrays.fill(this.bytes, (short) -1);
+            for (int j = 0; j < alphabet.length(); j++) {
+                this.bytes[alphabet.charAt(j)] = (short) j;
+            }
+        } else {
+            this.bytes = null;
+        }
+
+        if (maxChar < DENSE_LIMIT) {
+            this.dense = new short[maxChar + 1];
+            Arrays.fill(this.dense, (short) -1);
+            for (int j = 0; j < alphabet.length(); j++) {
+                char c = alphabet.charAt(j);
+                if (this.dense[c] != -1) {
+                    throw new IllegalArgumentException("alphabet contains a duplicate character at position " + j);
+                }
+                this.dense[c] = (short) j;
+            }
+            this.keys = null;
+            this.values = null;
+            this.multiplier = 0;
+            this.shift = 0;
+            return;
+        }
+
+        // Sparse alphabets, search for a multiplier that maps every character to its own slot
+        this.dense = null;
+        for (int bits = 32 - Integer.numberOfLeadingZeros(2 * alphabet.length() - 1); ; bits++) {
+            char[] k = new char[1 << bits];
+            short[] v = new short[1 << bits];
+            int seed = 0x9E3779B9;
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                int m = seed | 1;
+                seed = seed * 1664525 + 1013904223;
+                if (fill(alphabet, k, v, m, 32 - bits)) {
+                    this.keys = k;
+                    this.values = v;
+                    this.multiplier = m;
+                    this.shift = 32 - bits;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Try to place every character of the alphabet with the given hash
+     * @return             true if the hash is collision-free
+     */
+    private static boolean fill(String alphabet, char[] k, short[] v, int m, int shift) {
+        Arrays.fill(v, (short) -1);
+        for (int j = 0; j < alphabet.length(); j++) {
+            char c = alphabet.charAt(j);
+            int slot = (c * m) >>> shift;
+            if (v[slot] != -1) {
+                if (k[slot] == c) {
+                    throw new IllegalArgumentException("alphabet contains a duplicate character at position " + j);
+                }
+                return false;
+            }
+            k[slot] = c;
+            v[slot] = (short) j;
+        }
+        return true;
+    }
+
+    /**
+     * Return the position of a character in the alphabet
+     * @param c            a character
+     * @return             the index of c, or -1 if it is not in the alphabet
+     */
+    int indexOf(char c) {
+        if (this.dense != null) {
+            return (c < this.dense.length) ? this.dense[c] : -1;
+        }
+        int slot = (c * this.multiplier) >>> this.shift;
+        return (this.keys[slot] == c) ? this.values[slot] : -1;
+    }
+
+    /**
+     * Return the position of a byte, read as an unsigned ISO-8859-1 character, in the alphabet
+     * @param b            a byte, only valid when isSingleByte() is true
+     * @return             the index of b, or -1 if it is not in the alphabet
+     */
+    int indexOf(byte b) {
+        return this.bytes[b & 0xFF];
+    }
+
+    /**
+     * @return             true if every character of the alphabet is below 256, so it can be used with bytes
+     */
+    boolean isSingleByte() {
+        return this.bytes != null;
+    }
+
+    private static final int DENSE_LIMIT = 8192;
+    private static final int MAX_ATTEMPTS = 64;
+
+    private final short[] bytes;
+    private final short[] dense;
+    private final char[] keys;
+    private final short[] values;
+    private final int multiplier;
+    private final int shift;
+}
@@ -0,0 +1,149 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+
+/**
+ * A memoizing decorator around an FF3Cipher for skewed workloads, where a small set of values
+ * accounts for most calls. Results are cached by (tweak, input) in bounded caches for each
+ * direction, and each result also fills the inverse entry of the other direction, so a value that
+ * was just encrypted decrypts without running the cipher.
+ *
+ * Instances are thread-safe. The caches belong to the wrapped cipher, so results are never shared
+ * across keys.
+ */
+public final class CachingFF3Cipher {
+
+    /**
+     * Wrap a cipher with on-heap CLOCK caches
+     * @param cipher       the cipher
+     * @param capacity     the maximum number of entries in each direction
+     */
+    public CachingFF3Cipher(FF3Cipher cipher, int capacity) {
+        this(cipher, new ClockTokenCache(capacity), new ClockTokenCache(capacity));
+    }
+
+    /**
+     * Wrap a cipher with the given caches, which must be empty and used only by this instance
+     * @param cipher       the cipher
+     * @param encryptCache maps plaintexts to ciphertexts
+     * @param decryptCache maps ciphertexts to plaintexts
+     */
+    public CachingFF3Cipher(FF3Cipher cipher, TokenCache encryptCache, TokenCache decryptCache) {
+        if (encryptCache == decryptCache) {
+            throw new IllegalArgumentException("encrypt and decrypt caches must be separate");
+        }
+        this.cipher = cipher;
+        this.encryptCache = encryptCache;
+        this.decryptCache = decryptCache;
+    }
+
+    /**
+     * Encrypt a value with the cipher's tweak
+     * @param plaintext   a plaintext to encrypt
+     * @return            the ciphertext
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public String encrypt(String plaintext) throws BadPaddingException, IllegalBlockSizeException {
+        return encrypt(plaintext, this.cipher.tweak());
+    }
+
+    /**
+     * Encrypt a value with a pre-parsed tweak
+     * @param plaintext   a plaintext to encrypt
+     * @param tweak       a local tweak for encrypting
+     * @return            the ciphertext
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public String encrypt(String plaintext, Tweak tweak) throws BadPaddingException, IllegalBlockSizeException {
+        String ciphertext = this.encryptCache.get(tweak, plaintext);
+        if (ciphertext != null) {
+            this.hits.increment();
+            return ciphertext;
+        }
+        this.misses.increment();
+        ciphertext = this.cipher.encrypt(plaintext, tweak);
+        this.encryptCache.put(tweak, plaintext, ciphertext);
+        this.decryptCache.put(tweak, ciphertext, plaintext);
+        return ciphertext;
+    }
+
+    /**
+     * Decrypt a value with the cipher's tweak
+     * @param ciphertext   a ciphertext to decrypt
+     * @return             the plaintext
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public String decrypt(String ciphertext) throws BadPaddingException, IllegalBlockSizeException {
+        return decrypt(ciphertext, this.cipher.tweak());
+    }
+
+    /**
+     * Decrypt a value with a pre-parsed tweak
+     * @param ciphertext   a ciphertext to decrypt
+     * @param tweak        a local tweak for decrypting
+     * @return             the plaintext
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public String decrypt(String ciphertext, Tweak tweak) throws BadPaddingException, IllegalBlockSizeException {
+        String plaintext = this.decryptCache.get(tweak, ciphertext);
+        if (plaintext != null) {
+            this.hits.increment();
+            return plaintext;
+        }
+        this.misses.increment();
+        plaintext = this.cipher.decrypt(ciphertext, tweak);
+        this.decryptCache.put(tweak, ciphertext, plaintext);
+        this.encryptCache.put(tweak, plaintext, ciphertext);
+        return plaintext;
+    }
+
+    /**
+     * @return             the wrapped cipher
+     */
+    public FF3Cipher cipher() {
+        return this.cipher;
+    }
+
+    /**
+     * @return             the number of calls answered from a cache
+     */
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return             the number of calls that ran the cipher
+     */
+    public long misses() {
+        return this.misses.sum();
+    }
+
+    private final FF3Cipher cipher;
+    private final TokenCache encryptCache;
+    private final TokenCache decryptCache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+}
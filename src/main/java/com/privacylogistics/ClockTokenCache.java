@@ -0,0 +1,164 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import java.util.HashMap;
+
+/**
+ * An on-heap TokenCache with CLOCK (second chance) eviction. Entries are spread over independently
+ * locked segments by hash, each a ring of slots with a reference bit that a hit sets and the
+ * clock hand clears, so hot entries survive while one-off values are evicted.
+ */
+public final class ClockTokenCache implements TokenCache {
+
+    /**
+     * Create an empty cache
+     * @param capacity     the maximum number of entries
+     */
+    public ClockTokenCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int n = Math.min(MAX_SEGMENTS, Integer.highestOneBit(capacity));
+        this.segments = new Segment[n];
+        for (int j = 0; j < n; j++) {
+            // Spread the remainder so the total capacity is exact
+            this.segments[j] = new Segment(capacity / n + ((j < capacity % n) ? 1 : 0));
+        }
+    }
+
+    @Override
+    public String get(Tweak tweak, String input) {
+        Key key = new Key(tweak, input);
+        return segment(key).get(key);
+    }
+
+    @Override
+    public void put(Tweak tweak, String input, String output) {
+        Key key = new Key(tweak, input);
+        segment(key).put(key, output);
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment s : this.segments) {
+            size += s.size();
+        }
+        return size;
+    }
+
+    private Segment segment(Key key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return this.segments[h & (this.segments.length - 1)];
+    }
+
+    /**
+     * A CLOCK ring of slots, with an index from key to slot
+     */
+    private static final class Segment {
+
+        Segment(int capacity) {
+            this.index = new HashMap<>(capacity * 4 / 3 + 1);
+            this.keys = new Key[capacity];
+            this.values = new String[capacity];
+            this.referenced = new boolean[capacity];
+        }
+
+        synchronized String get(Key key) {
+            Integer slot = this.index.get(key);
+            if (slot == null) {
+                return null;
+            }
+            this.referenced[slot] = true;
+            return this.values[slot];
+        }
+
+        synchronized void put(Key key, String value) {
+            Integer existing = this.index.get(key);
+            if (existing != null) {
+                this.values[existing] = value;
+                return;
+            }
+
+            int slot;
+            if (this.used < this.keys.length) {
+                slot = this.used++;
+            } else {
+                // Advance the hand, giving referenced entries a second chance
+                while (this.referenced[this.hand]) {
+                    this.referenced[this.hand] = false;
+                    this.hand = (this.hand + 1) % this.keys.length;
+                }
+                slot = this.hand;
+                this.hand = (this.hand + 1) % this.keys.length;
+                this.index.remove(this.keys[slot]);
+            }
+            this.keys[slot] = key;
+            this.values[slot] = value;
+            this.referenced[slot] = false;
+            this.index.put(key, slot);
+        }
+
+        synchronized int size() {
+            return this.used;
+        }
+
+        private final HashMap<Key, Integer> index;
+        private final Key[] keys;
+        private final String[] values;
+        private final boolean[] referenced;
+        private int used;
+        private int hand;
+    }
+
+    /**
+     * A (tweak, input) pair
+     */
+    private static final class Key {
+
+        Key(Tweak tweak, String input) {
+            this.tweak = tweak;
+            this.input = input;
+            this.hash = 31 * tweak.hashCode() + input.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return this.hash == k.hash && this.input.equals(k.input) && this.tweak.equals(k.tweak);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        private final Tweak tweak;
+        private final String input;
+        private final int hash;
+    }
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+}
@@ -0,0 +1,105 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of the RoundContexts of one FF3Cipher. Each call takes a context and returns it
+ * when done, so the number of AES instances and buffers a cipher keeps is bounded by the pool
+ * size rather than by the number of threads that ever used it, and they all become unreachable
+ * together with the cipher.
+ *
+ * Each thread starts looking at a slot derived from its id, so a thread usually gets back the
+ * context it returned last without contending with others. When every slot is empty a new context
+ * is created, and a context returned to a full pool is dropped.
+ */
+final class ContextPool {
+
+    /**
+     * Create an empty pool
+     * @param factory      creates a context when the pool has none to hand out
+     * @param size         the most contexts kept, rounded up to a power of two
+     */
+    ContextPool(Supplier<RoundContext> factory, int size) {
+        int slots = (size <= 1) ? 1 : Integer.highestOneBit(size - 1) << 1;
+        this.factory = factory;
+        this.slots = new AtomicReferenceArray<>(slots);
+        this.mask = slots - 1;
+    }
+
+    /**
+     * Take a context for the calling thread, which must release it when done
+     * @return             a context that no other thread is using
+     */
+    RoundContext acquire() {
+        int home = home();
+        for (int j = 0; j <= this.mask; j++) {
+            int i = (home + j) & this.mask;
+            RoundContext ctx = this.slots.get(i);
+            if (ctx != null && this.slots.compareAndSet(i, ctx, null)) {
+                return ctx;
+            }
+        }
+        return this.factory.get();
+    }
+
+    /**
+     * Return a context taken with acquire
+     * @param ctx          the context, which the caller must no longer use
+     */
+    void release(RoundContext ctx) {
+        int home = home();
+        for (int j = 0; j <= this.mask; j++) {
+            int i = (home + j) & this.mask;
+            if (this.slots.get(i) == null && this.slots.compareAndSet(i, null, ctx)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return             the number of contexts waiting in the pool
+     */
+    int idle() {
+        int idle = 0;
+        for (int i = 0; i <= this.mask; i++) {
+            if (this.slots.get(i) != null) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * @return             the number of contexts the pool can hold
+     */
+    int capacity() {
+        return this.mask + 1;
+    }
+
+    private int home() {
+        // Fibonacci hashing spreads consecutive thread ids over the slots
+        return (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private final Supplier<RoundContext> factory;
+    private final AtomicReferenceArray<RoundContext> slots;
+    private final int mask;
+}
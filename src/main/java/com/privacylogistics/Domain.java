@@ -0,0 +1,95 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * The precomputed parameters for one message length n: the split point, the moduli radix^u and
+ * radix^v in the representation used by the selected engine, and which engine to use. An
+ * FF3Cipher builds one Domain per supported length when it is constructed.
+ */
+final class Domain {
+
+    /** Arithmetic used for the Feistel rounds */
+    enum Engine {
+        /** radix^u fits in a long */
+        LONG,
+        /** radix^u fits in 96 bits, values are (hi, lo) pairs of longs */
+        WIDE
+    }
+
+    /**
+     * Calculate the parameters for a message length
+     * @param radix          the radix
+     * @param n              the message length
+     * @param maxLongHalfLen the longest half whose domain fits in a long
+     * @param maxWideHalfLen the longest half whose domain fits in 96 bits
+     * @throws IllegalStateException if the half length exceeds maxWideHalfLen, which the FF3
+     *                               length limit rules out for every supported radix
+     */
+    Domain(int radix, int n, int maxLongHalfLen, int maxWideHalfLen) {
+        this.n = n;
+        this.u = (n + 1) / 2;
+        this.v = n - this.u;
+
+        // maxLen = 2 * floor(log_radix(2^96)) keeps every half within 96 bits
+        if (this.u > maxWideHalfLen) {
+            throw new IllegalStateException(String.format("half length %d exceeds 96 bits in radix %d", this.u, radix));
+        }
+        this.engine = (this.u <= maxLongHalfLen) ? Engine.LONG : Engine.WIDE;
+
+        // Only the representation of the selected engine is used, the other is left empty
+        if (this.engine == Engine.LONG) {
+            this.modU = UInt128.pow(radix, this.u)[1];
+            this.modV = UInt128.pow(radix, this.v)[1];
+            this.wideModU = null;
+            this.wideModV = null;
+            this.wideModUDouble = 0;
+            this.wideModVDouble = 0;
+        } else {
+            this.modU = 0;
+            this.modV = 0;
+            this.wideModU = UInt128.pow(radix, this.u);
+            this.wideModV = UInt128.pow(radix, this.v);
+            this.wideModUDouble = UInt128.toDouble(this.wideModU[0], this.wideModU[1]);
+            this.wideModVDouble = UInt128.toDouble(this.wideModV[0], this.wideModV[1]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (engine == Engine.LONG)
+                ? String.format("n %d u %d v %d engine %s modU %d modV %d", n, u, v, engine, modU, modV)
+                : String.format("n %d u %d v %d engine %s modU %s modV %s", n, u, v, engine,
+                        Arrays.toString(wideModU), Arrays.toString(wideModV));
+    }
+
+    final int n;
+    final int u;
+    final int v;
+    final Engine engine;
+
+    final long modU;
+    final long modV;
+
+    final long[] wideModU;
+    final long[] wideModV;
+    final double wideModUDouble;
+    final double wideModVDouble;
+}
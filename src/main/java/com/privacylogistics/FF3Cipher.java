@@ -17,6 +17,8 @@ package com.privacylogistics;
  * See the License for the specific language governing permissions and limitations under the License.
  */
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.nio.charset.StandardCharsets;
 import javax.crypto.*;
 import javax.crypto.spec.SecretKeySpec;
@@ -24,12 +26,17 @@ import java.math.BigInteger;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * Class FF3Cipher implements the FF3 format-preserving encryption algorithm
+ *
+ * Instances are thread-safe: the key, alphabet and default tweak are immutable, and each call
+ * borrows an AES instance from a small pool owned by the cipher, so a single FF3Cipher per key can
+ * be shared by all threads.
  */
 public class FF3Cipher {
     /**
@@ -77,22 +84,52 @@ public class FF3Cipher {
             throw new IllegalArgumentException("radix must be between 2 and 256, inclusive");
         }
 
+        // Precompute the character to numeral lookup, this also rejects duplicate characters
+        this.alphabetIndex = new AlphabetIndex(alphabet);
+
         // Make sure 2 <= minLength <= maxLength < 2*floor(log base radix of 2^96) is satisfied
         if ((this.minLen < 2) || (this.maxLen < this.minLen)) {
             throw new IllegalArgumentException("minLen or maxLen invalid, adjust your radix");
         }
 
-        this.tweakBytes = hexStringToByteArray(tweak);
+        // Halves up to this length have a domain radix^m that fits in a long, and are
+        // encrypted with primitive arithmetic instead of BigInteger. Longer halves up to
+        // the 96-bit FF3 limit use the two-long (hi, lo) engine.
+        this.maxLongHalfLen = maxHalfLength(radix, BigInteger.valueOf(Long.MAX_VALUE));
+        this.maxWideHalfLen = maxHalfLength(radix, BigInteger.ONE.shiftLeft(96));
+        this.longChunk = pow(radix, this.maxLongHalfLen);
+
+        // Precompute the split point, moduli and engine for every supported message length
+        this.domains = new Domain[this.maxLen + 1];
+        for (int n = this.minLen; n <= this.maxLen; n++) {
+            this.domains[n] = new Domain(radix, n, this.maxLongHalfLen, this.maxWideHalfLen);
+        }
+
+        this.tweak = Tweak.of(tweak);
 
         // AES block cipher in ECB mode with the block size derived based on the length of the key
         // Always use the reversed key since Encrypt and Decrypt call cipher expecting that
         // Feistel ciphers use the same func for encrypt/decrypt, so mode is always ENCRYPT_MODE
 
+        // javax.crypto.Cipher is not thread-safe, so the key spec is kept to initialize AES
+        // instances for a pool that each call borrows from. The first is created here so a bad
+        // key fails in the constructor.
+        reverseBytes(keyBytes);
+        this.keySpec = new SecretKeySpec(keyBytes, "AES");
+        Arrays.fill(keyBytes, (byte) 0);
+        this.contexts = new ContextPool(() -> new RoundContext(newAesCipher(), this.maxLen), CONTEXT_POOL_SIZE);
+        this.contexts.release(this.contexts.acquire());
+    }
+
+    /**
+     * Create and initialize an AES ECB cipher with the reversed key
+     * @return             a cipher for use by one thread at a time
+     */
+    private Cipher newAesCipher() {
         try {
-            reverseBytes(keyBytes);
-            SecretKeySpec keySpec = new SecretKeySpec(keyBytes, "AES");
-            aesCipher = Cipher.getInstance("AES/ECB/NoPadding");
-            aesCipher.init(Cipher.ENCRYPT_MODE, keySpec);
+            Cipher aes = Cipher.getInstance("AES/ECB/NoPadding");
+            aes.init(Cipher.ENCRYPT_MODE, this.keySpec);
+            return aes;
         } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException e) {
             // this could happen if the JRE doesn't have the ciphers
             throw new RuntimeException(e);
@@ -120,8 +157,46 @@ public class FF3Cipher {
      */
     @SuppressWarnings("unused")
     public String encrypt(String plaintext, String tweak) throws BadPaddingException, IllegalBlockSizeException {
-        this.tweakBytes = hexStringToByteArray(tweak);
-        return encrypt(plaintext);
+        return encrypt(plaintext, parseTweak(tweak));
+    }
+
+    /**
+     * @return            the tweak used when none is passed to encrypt or decrypt
+     */
+    Tweak tweak() {
+        return this.tweak;
+    }
+
+    /**
+     * @return            the minimum message length
+     */
+    int minLen() {
+        return this.minLen;
+    }
+
+    /**
+     * @return            the maximum message length
+     */
+    int maxLen() {
+        return this.maxLen;
+    }
+
+    /**
+     * Parse a hex tweak, or return the compiled tweak from an earlier call. The cache is
+     * bounded, and is simply emptied when full since the set of tweaks in use is usually small.
+     * @param hex         the tweak in hexadecimal
+     * @return            the tweak
+     */
+    private Tweak parseTweak(String hex) {
+        Tweak t = this.tweakCache.get(hex);
+        if (t == null) {
+            t = Tweak.of(hex);
+            if (this.tweakCache.size() >= TWEAK_CACHE_SIZE) {
+                this.tweakCache.clear();
+            }
+            this.tweakCache.put(hex, t);
+        }
+        return t;
     }
 
     /**
@@ -132,205 +207,1443 @@ public class FF3Cipher {
      * @throws IllegalBlockSizeException internal error
      */
     public String encrypt(String plaintext) throws BadPaddingException, IllegalBlockSizeException {
-        int n = plaintext.length();
+        return encrypt(plaintext, this.tweak);
+    }
 
-        // Check if message length is within minLength and maxLength bounds
-        if ((n < this.minLen) || (n > this.maxLen)) {
-            throw new IllegalArgumentException(String.format("message length %d is not within min %d and max %d bounds",
-                    n, this.minLen, this.maxLen));
+    /**
+     * Encrypt a value with a pre-parsed tweak, the cipher itself is not modified
+     * @param plaintext   a plaintext to encrypt
+     * @param tweak       a local tweak for encrypting
+     * @return            the ciphertext
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public String encrypt(String plaintext, Tweak tweak) throws BadPaddingException, IllegalBlockSizeException {
+        Domain d = domain(plaintext.length());
+        RoundContext ctx = this.contexts.acquire();
+        try {
+            toNumerals(plaintext, ctx.numerals);
+            cipherNumerals(ctx, d, tweak, true);
+            return fromNumerals(ctx.numerals, d.n, ctx.chars);
+        } finally {
+            this.contexts.release(ctx);
         }
+    }
 
-        // Calculate split point
-        int u = (int) Math.ceil(n / 2.0);
-        int v = n - u;
+    /**
+     * Decrypt a value - convenience method to override tweak
+     * @param ciphertext   a ciphertext to decrypt
+     * @param tweak        a local tweak for decrypting
+     * @return             the plaintext
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    @SuppressWarnings("unused")
+    public String decrypt(String ciphertext, String tweak) throws BadPaddingException, IllegalBlockSizeException {
+        return decrypt(ciphertext, parseTweak(tweak));
+    }
 
-        // Split the message
-        String A = plaintext.substring(0, u);
-        String B = plaintext.substring(u);
-        logger.trace("r {} A {} B {}", this.radix, A, B);
+    /**
+     * Decrypt a value
+     * @param ciphertext   a ciphertext to decrypt
+     * @return             the plaintext
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public String decrypt(String ciphertext) throws BadPaddingException, IllegalBlockSizeException {
+        return decrypt(ciphertext, this.tweak);
+    }
 
-        if ((this.tweakBytes.length != TWEAK_LEN) && (this.tweakBytes.length != TWEAK_LEN_NEW)) {
-            throw new IllegalArgumentException(String.format("tweak length %d is invalid: tweak must be 56 or 64 bits",
-                    this.tweakBytes.length));
+    /**
+     * Decrypt a value with a pre-parsed tweak, the cipher itself is not modified
+     * @param ciphertext   a ciphertext to decrypt
+     * @param tweak        a local tweak for decrypting
+     * @return             the plaintext
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public String decrypt(String ciphertext, Tweak tweak) throws BadPaddingException, IllegalBlockSizeException {
+        Domain d = domain(ciphertext.length());
+        RoundContext ctx = this.contexts.acquire();
+        try {
+            toNumerals(ciphertext, ctx.numerals);
+            cipherNumerals(ctx, d, tweak, false);
+            return fromNumerals(ctx.numerals, d.n, ctx.chars);
+        } finally {
+            this.contexts.release(ctx);
         }
+    }
 
-        // Calculate the tweak
-        logger.trace("tweak: {}", () -> byteArrayToHexString(this.tweakBytes));
+    /**
+     * Encrypt characters into a caller-provided array, without creating any strings
+     * @param plaintext    the plaintext to encrypt
+     * @param out          receives the ciphertext
+     * @param outOffset    the position in out of the first ciphertext character
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public void encrypt(CharSequence plaintext, char[] out, int outOffset)
+            throws BadPaddingException, IllegalBlockSizeException {
+        encrypt(plaintext, out, outOffset, this.tweak);
+    }
 
-        byte[] tweak64 = (this.tweakBytes.length == TWEAK_LEN_NEW) ?
-                calculateTweak64_FF3_1(this.tweakBytes) : this.tweakBytes;
+    /**
+     * Encrypt characters into a caller-provided array with a pre-parsed tweak, without creating any strings
+     * @param plaintext    the plaintext to encrypt
+     * @param out          receives the ciphertext
+     * @param outOffset    the position in out of the first ciphertext character
+     * @param tweak        a local tweak for encrypting
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public void encrypt(CharSequence plaintext, char[] out, int outOffset, Tweak tweak)
+            throws BadPaddingException, IllegalBlockSizeException {
+        Domain d = domain(plaintext.length());
+        checkRange(out.length, outOffset, d.n);
+        RoundContext ctx = this.contexts.acquire();
+        try {
+            toNumerals(plaintext, ctx.numerals);
+            cipherNumerals(ctx, d, tweak, true);
+            fromNumerals(ctx.numerals, d.n, out, outOffset);
+        } finally {
+            this.contexts.release(ctx);
+        }
+    }
 
-        byte[] Tl = Arrays.copyOf(tweak64, HALF_TWEAK_LEN);
-        byte[] Tr = Arrays.copyOfRange(tweak64, HALF_TWEAK_LEN, TWEAK_LEN);
+    /**
+     * Encrypt a range of characters into a caller-provided array. The ranges may be the same
+     * to encrypt in place.
+     * @param in           holds the plaintext
+     * @param offset       the position in in of the first plaintext character
+     * @param length       the length of the plaintext
+     * @param out          receives the ciphertext
+     * @param outOffset    the position in out of the first ciphertext character
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public void encrypt(char[] in, int offset, int length, char[] out, int outOffset)
+            throws BadPaddingException, IllegalBlockSizeException {
+        encrypt(in, offset, length, out, outOffset, this.tweak);
+    }
 
-        // P is always 16 bytes
-        byte[] P;
+    /**
+     * Encrypt a range of characters into a caller-provided array with a pre-parsed tweak. The
+     * ranges may be the same to encrypt in place.
+     * @param in           holds the plaintext
+     * @param offset       the position in in of the first plaintext character
+     * @param length       the length of the plaintext
+     * @param out          receives the ciphertext
+     * @param outOffset    the position in out of the first ciphertext character
+     * @param tweak        a local tweak for encrypting
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public void encrypt(char[] in, int offset, int length, char[] out, int outOffset, Tweak tweak)
+            throws BadPaddingException, IllegalBlockSizeException {
+        checkRange(in.length, offset, length);
+        Domain d = domain(length);
+        checkRange(out.length, outOffset, length);
+        RoundContext ctx = this.contexts.acquire();
+        try {
+            toNumerals(in, offset, length, ctx.numerals);
+            cipherNumerals(ctx, d, tweak, true);
+            fromNumerals(ctx.numerals, length, out, outOffset);
+        } finally {
+            this.contexts.release(ctx);
+        }
+    }
 
-        // Pre-calculate the modulus since it's only one of 2 values,
-        // depending on whether it is even or odd
+    /**
+     * Decrypt characters into a caller-provided array, without creating any strings
+     * @param ciphertext   the ciphertext to decrypt
+     * @param out          receives the plaintext
+     * @param outOffset    the position in out of the first plaintext character
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public void decrypt(CharSequence ciphertext, char[] out, int outOffset)
+            throws BadPaddingException, IllegalBlockSizeException {
+        decrypt(ciphertext, out, outOffset, this.tweak);
+    }
 
-        BigInteger modU = BigInteger.valueOf(this.radix).pow(u);
-        BigInteger modV = BigInteger.valueOf(this.radix).pow(v);
-        logger.trace("u {} v {} modU: {} modV: {}", u, v, modU, modV);
-        logger.trace("tL: {} tR: {}", () -> byteArrayToHexString(Tl), () -> byteArrayToHexString(Tr));
+    /**
+     * Decrypt characters into a caller-provided array with a pre-parsed tweak, without creating any strings
+     * @param ciphertext   the ciphertext to decrypt
+     * @param out          receives the plaintext
+     * @param outOffset    the position in out of the first plaintext character
+     * @param tweak        a local tweak for decrypting
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public void decrypt(CharSequence ciphertext, char[] out, int outOffset, Tweak tweak)
+            throws BadPaddingException, IllegalBlockSizeException {
+        Domain d = domain(ciphertext.length());
+        checkRange(out.length, outOffset, d.n);
+        RoundContext ctx = this.contexts.acquire();
+        try {
+            toNumerals(ciphertext, ctx.numerals);
+            cipherNumerals(ctx, d, tweak, false);
+            fromNumerals(ctx.numerals, d.n, out, outOffset);
+        } finally {
+            this.contexts.release(ctx);
+        }
+    }
 
-        for (byte i = 0; i < NUM_ROUNDS; ++i) {
-            int m;
-            BigInteger c;
-            byte[] W;
-
-            // Determine alternating Feistel round side, right or left
-            if (i % 2 == 0) {
-                m = u;
-                W = Tr;
+    /**
+     * Decrypt a range of characters into a caller-provided array. The ranges may be the same
+     * to decrypt in place.
+     * @param in           holds the ciphertext
+     * @param offset       the position in in of the first ciphertext character
+     * @param length       the length of the ciphertext
+     * @param out          receives the plaintext
+     * @param outOffset    the position in out of the first plaintext character
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public void decrypt(char[] in, int offset, int length, char[] out, int outOffset)
+            throws BadPaddingException, IllegalBlockSizeException {
+        decrypt(in, offset, length, out, outOffset, this.tweak);
+    }
+
+    /**
+     * Decrypt a range of characters into a caller-provided array with a pre-parsed tweak. The
+     * ranges may be the same to decrypt in place.
+     * @param in           holds the ciphertext
+     * @param offset       the position in in of the first ciphertext character
+     * @param length       the length of the ciphertext
+     * @param out          receives the plaintext
+     * @param outOffset    the position in out of the first plaintext character
+     * @param tweak        a local tweak for decrypting
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public void decrypt(char[] in, int offset, int length, char[] out, int outOffset, Tweak tweak)
+            throws BadPaddingException, IllegalBlockSizeException {
+        checkRange(in.length, offset, length);
+        Domain d = domain(length);
+        checkRange(out.length, outOffset, length);
+        RoundContext ctx = this.contexts.acquire();
+        try {
+            toNumerals(in, offset, length, ctx.numerals);
+            cipherNumerals(ctx, d, tweak, false);
+            fromNumerals(ctx.numerals, length, out, outOffset);
+        } finally {
+            this.contexts.release(ctx);
+        }
+    }
+
+    /**
+     * Encrypt a range of single-byte characters, e.g. ASCII, into a caller-provided array. Each
+     * byte is read as an ISO-8859-1 character. The ranges may be the same to encrypt in place.
+     * @param in           holds the plaintext
+     * @param offset       the position in in of the first plaintext byte
+     * @param length       the length of the plaintext
+     * @param out          receives the ciphertext
+     * @param outOffset    the position in out of the first ciphertext byte
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     * @throws UnsupportedOperationException if the alphabet has characters above 0xFF
+     */
+    public void encrypt(byte[] in, int offset, int length, byte[] out, int outOffset)
+            throws BadPaddingException, IllegalBlockSizeException {
+        cipherBytes(in, offset, length, out, outOffset, this.tweak, true);
+    }
+
+    /**
+     * Encrypt a range of single-byte characters into a caller-provided array with a pre-parsed
+     * tweak. The ranges may be the same to encrypt in place.
+     * @param in           holds the plaintext
+     * @param offset       the position in in of the first plaintext byte
+     * @param length       the length of the plaintext
+     * @param out          receives the ciphertext
+     * @param outOffset    the position in out of the first ciphertext byte
+     * @param tweak        a local tweak for encrypting
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     * @throws UnsupportedOperationException if the alphabet has characters above 0xFF
+     */
+    public void encrypt(byte[] in, int offset, int length, byte[] out, int outOffset, Tweak tweak)
+            throws BadPaddingException, IllegalBlockSizeException {
+        cipherBytes(in, offset, length, out, outOffset, tweak, true);
+    }
+
+    /**
+     * Encrypt the single-byte characters between a buffer's position and limit in place, for heap
+     * or direct buffers. The position is advanced to the limit.
+     * @param buffer       holds the plaintext, and receives the ciphertext
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     * @throws UnsupportedOperationException if the alphabet has characters above 0xFF
+     * @throws ReadOnlyBufferException if the buffer is read-only
+     */
+    public void encrypt(ByteBuffer buffer) throws BadPaddingException, IllegalBlockSizeException {
+        cipherBuffer(buffer, this.tweak, true);
+    }
+
+    /**
+     * Encrypt the single-byte characters between a buffer's position and limit in place with a
+     * pre-parsed tweak. The position is advanced to the limit.
+     * @param buffer       holds the plaintext, and receives the ciphertext
+     * @param tweak        a local tweak for encrypting
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     * @throws UnsupportedOperationException if the alphabet has characters above 0xFF
+     * @throws ReadOnlyBufferException if the buffer is read-only
+     */
+    public void encrypt(ByteBuffer buffer, Tweak tweak) throws BadPaddingException, IllegalBlockSizeException {
+        cipherBuffer(buffer, tweak, true);
+    }
+
+    /**
+     * Decrypt a range of single-byte characters, e.g. ASCII, into a caller-provided array. Each
+     * byte is read as an ISO-8859-1 character. The ranges may be the same to decrypt in place.
+     * @param in           holds the ciphertext
+     * @param offset       the position in in of the first ciphertext byte
+     * @param length       the length of the ciphertext
+     * @param out          receives the plaintext
+     * @param outOffset    the position in out of the first plaintext byte
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     * @throws UnsupportedOperationException if the alphabet has characters above 0xFF
+     */
+    public void decrypt(byte[] in, int offset, int length, byte[] out, int outOffset)
+            throws BadPaddingException, IllegalBlockSizeException {
+        cipherBytes(in, offset, length, out, outOffset, this.tweak, false);
+    }
+
+    /**
+     * Decrypt a range of single-byte characters into a caller-provided array with a pre-parsed
+     * tweak. The ranges may be the same to decrypt in place.
+     * @param in           holds the ciphertext
+     * @param offset       the position in in of the first ciphertext byte
+     * @param length       the length of the ciphertext
+     * @param out          receives the plaintext
+     * @param outOffset    the position in out of the first plaintext byte
+     * @param tweak        a local tweak for decrypting
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     * @throws UnsupportedOperationException if the alphabet has characters above 0xFF
+     */
+    public void decrypt(byte[] in, int offset, int length, byte[] out, int outOffset, Tweak tweak)
+            throws BadPaddingException, IllegalBlockSizeException {
+        cipherBytes(in, offset, length, out, outOffset, tweak, false);
+    }
+
+    /**
+     * Decrypt the single-byte characters between a buffer's position and limit in place, for heap
+     * or direct buffers. The position is advanced to the limit.
+     * @param buffer       holds the ciphertext, and receives the plaintext
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     * @throws UnsupportedOperationException if the alphabet has characters above 0xFF
+     * @throws ReadOnlyBufferException if the buffer is read-only
+     */
+    public void decrypt(ByteBuffer buffer) throws BadPaddingException, IllegalBlockSizeException {
+        cipherBuffer(buffer, this.tweak, false);
+    }
+
+    /**
+     * Decrypt the single-byte characters between a buffer's position and limit in place with a
+     * pre-parsed tweak. The position is advanced to the limit.
+     * @param buffer       holds the ciphertext, and receives the plaintext
+     * @param tweak        a local tweak for decrypting
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     * @throws UnsupportedOperationException if the alphabet has characters above 0xFF
+     * @throws ReadOnlyBufferException if the buffer is read-only
+     */
+    public void decrypt(ByteBuffer buffer, Tweak tweak) throws BadPaddingException, IllegalBlockSizeException {
+        cipherBuffer(buffer, tweak, false);
+    }
+
+    /**
+     * Encrypt or decrypt a range of single-byte characters into a caller-provided array
+     */
+    private void cipherBytes(byte[] in, int offset, int length, byte[] out, int outOffset, Tweak tweak, boolean encrypt)
+            throws BadPaddingException, IllegalBlockSizeException {
+        checkSingleByte();
+        checkRange(in.length, offset, length);
+        Domain d = domain(length);
+        checkRange(out.length, outOffset, length);
+        RoundContext ctx = this.contexts.acquire();
+        try {
+            toNumerals(in, offset, length, ctx.numerals);
+            cipherNumerals(ctx, d, tweak, encrypt);
+            fromNumerals(ctx.numerals, length, out, outOffset);
+        } finally {
+            this.contexts.release(ctx);
+        }
+    }
+
+    /**
+     * Encrypt or decrypt the single-byte characters between a buffer's position and limit in place.
+     * Array-backed buffers are accessed through their array, others with absolute get and put.
+     */
+    private void cipherBuffer(ByteBuffer buffer, Tweak tweak, boolean encrypt)
+            throws BadPaddingException, IllegalBlockSizeException {
+        checkSingleByte();
+        if (buffer.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        int position = buffer.position();
+        int n = buffer.remaining();
+        Domain d = domain(n);
+        RoundContext ctx = this.contexts.acquire();
+        try {
+            int[] X = ctx.numerals;
+
+            if (buffer.hasArray()) {
+                toNumerals(buffer.array(), buffer.arrayOffset() + position, n, X);
             } else {
-                m = v;
-                W = Tl;
+                for (int j = 0; j < n; j++) {
+                    int numeral = this.alphabetIndex.indexOf(buffer.get(position + j));
+                    if (numeral < 0) {
+                        throw invalidCharacter(j);
+                    }
+                    X[j] = numeral;
+                }
             }
 
-            // P is fixed-length 16 bytes
-            P = calculateP(i, this.alphabet, W, B);
-            reverseBytes(P);
+            cipherNumerals(ctx, d, tweak, encrypt);
 
-            // Calculate S by operating on P in place
-            byte[] S = this.aesCipher.doFinal(P);
-            reverseBytes(S);
-            logger.trace("\tS: {}", () -> byteArrayToHexString(S));
+            if (buffer.hasArray()) {
+                fromNumerals(X, n, buffer.array(), buffer.arrayOffset() + position);
+            } else {
+                for (int j = 0; j < n; j++) {
+                    buffer.put(position + j, (byte) this.alphabet.charAt(X[j]));
+                }
+            }
+            buffer.position(buffer.limit());
+        } finally {
+            this.contexts.release(ctx);
+        }
+    }
 
-            BigInteger y = new BigInteger(byteArrayToHexString(S), 16);
+    /**
+     * Encrypt a number as a fixed-width numeral string in the cipher's radix, e.g. a 9 digit SSN
+     * held as a long, without creating strings
+     * @param plaintext    a number in [0, radix^digits)
+     * @param digits       the width, within the cipher's length bounds and small enough that
+     *                     radix^digits fits in a long (18 for radix 10)
+     * @return             the ciphertext as a number in [0, radix^digits)
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public long encryptLong(long plaintext, int digits) throws BadPaddingException, IllegalBlockSizeException {
+        return encryptLong(plaintext, digits, this.tweak);
+    }
 
-            // Calculate c
-            c = decode_int(reverseString(A), alphabet);
+    /**
+     * Encrypt a number as a fixed-width numeral string in the cipher's radix with a pre-parsed tweak
+     * @param plaintext    a number in [0, radix^digits)
+     * @param digits       the width, within the cipher's length bounds and small enough that
+     *                     radix^digits fits in a long (18 for radix 10)
+     * @param tweak        a local tweak for encrypting
+     * @return             the ciphertext as a number in [0, radix^digits)
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public long encryptLong(long plaintext, int digits, Tweak tweak) throws BadPaddingException, IllegalBlockSizeException {
+        return cipherLong(plaintext, digits, tweak, true);
+    }
 
-            c = c.add(y);
+    /**
+     * Decrypt a number encrypted with encryptLong
+     * @param ciphertext   a number in [0, radix^digits)
+     * @param digits       the width used to encrypt
+     * @return             the plaintext as a number in [0, radix^digits)
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public long decryptLong(long ciphertext, int digits) throws BadPaddingException, IllegalBlockSizeException {
+        return decryptLong(ciphertext, digits, this.tweak);
+    }
 
-            if (i % 2 == 0) {
-                c = c.mod(modU);
-            } else {
-                c = c.mod(modV);
+    /**
+     * Decrypt a number encrypted with encryptLong, with a pre-parsed tweak
+     * @param ciphertext   a number in [0, radix^digits)
+     * @param digits       the width used to encrypt
+     * @param tweak        a local tweak for decrypting
+     * @return             the plaintext as a number in [0, radix^digits)
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public long decryptLong(long ciphertext, int digits, Tweak tweak) throws BadPaddingException, IllegalBlockSizeException {
+        return cipherLong(ciphertext, digits, tweak, false);
+    }
+
+    /**
+     * Encrypt or decrypt a number as the numerals of its fixed-width representation, most
+     * significant first, so the result matches encrypting the zero-padded string
+     */
+    private long cipherLong(long value, int digits, Tweak tweak, boolean encrypt)
+            throws BadPaddingException, IllegalBlockSizeException {
+        Domain d = domain(digits);
+        if (digits > this.maxLongHalfLen) {
+            throw new IllegalArgumentException(String.format("%d digits in radix %d do not fit in a long", digits, this.radix));
+        }
+        // digits is within the 64-bit engine, so radix^digits = radix^u * radix^v is precomputed
+        if (value < 0 || value >= d.modU * d.modV) {
+            throw new IllegalArgumentException(String.format("value %d does not have %d digits in radix %d",
+                    value, digits, this.radix));
+        }
+
+        RoundContext ctx = this.contexts.acquire();
+        try {
+            int[] X = ctx.numerals;
+            for (int j = digits - 1; j >= 0; j--) {
+                X[j] = (int) (value % this.radix);
+                value /= this.radix;
             }
 
-            logger.trace("\tm: {} A: {} c: {} y: {}", m, A, c, y);
+            cipherNumerals(ctx, d, tweak, encrypt);
 
-            String C = encode_int_r(c, this.alphabet, m);
+            long result = 0;
+            for (int j = 0; j < digits; j++) {
+                result = result * this.radix + X[j];
+            }
+            return result;
+        } finally {
+            this.contexts.release(ctx);
+        }
+    }
 
-            // Final steps
-            A = B;
-            B = C;
-            logger.trace("A: {} B: {}", A, B);
+    /**
+     * Precompute the whole permutation of one message length with the cipher's tweak, limited to
+     * PermutationTable.DEFAULT_MAX_BYTES, so that values can be encrypted and decrypted by table lookup
+     * @param length       the message length
+     * @return             the table
+     * @throws IllegalArgumentException if the tables would need more than DEFAULT_MAX_BYTES
+     */
+    public PermutationTable permutationTable(int length) {
+        return permutationTable(length, this.tweak, PermutationTable.DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Precompute the whole permutation of one message length with the cipher's tweak, so that
+     * values can be encrypted and decrypted by table lookup
+     * @param length       the message length
+     * @param maxBytes     the most memory the forward and inverse tables may use
+     * @return             the table
+     * @throws IllegalArgumentException if the tables would need more than maxBytes
+     */
+    public PermutationTable permutationTable(int length, long maxBytes) {
+        return permutationTable(length, this.tweak, maxBytes);
+    }
+
+    /**
+     * Precompute the whole permutation of one message length and tweak, so that values can be
+     * encrypted and decrypted by table lookup. The table is built in parallel on the common
+     * fork-join pool.
+     * @param length       the message length
+     * @param tweak        the tweak
+     * @param maxBytes     the most memory the forward and inverse tables may use
+     * @return             the table
+     * @throws IllegalArgumentException if the tables would need more than maxBytes
+     */
+    public PermutationTable permutationTable(int length, Tweak tweak, long maxBytes) {
+        domain(length);
+        BigInteger size = BigInteger.valueOf(this.radix).pow(length);
+        if (size.bitLength() > 31 || PermutationTable.bytes(size.longValue()) > maxBytes) {
+            throw new IllegalArgumentException(String.format("a table of %s values exceeds %d bytes", size, maxBytes));
         }
-        return A + B;
+        return PermutationTable.build(this, this.alphabet, this.alphabetIndex, length, size.intValue(), tweak);
     }
 
     /**
-     * Decrypt a value - convenience method to override tweak
-     * @param ciphertext   a ciphertext to decrypt
+     * Encrypt the consecutive values [from, from + count) of a fixed width, as encryptLong would,
+     * in batches of RoundContext.Batch.SIZE so each Feistel round is one AES call per batch
+     * @param from         the first value
+     * @param count        the number of values
+     * @param digits       the width, radix^digits must be less than 2^31
+     * @param tweak        the tweak
+     * @param out          receives the ciphertext of value v at out[v]
+     */
+    void encryptRange(int from, int count, int digits, Tweak tweak, int[] out)
+            throws BadPaddingException, IllegalBlockSizeException {
+        Domain d = domain(digits);
+        RoundContext ctx = this.contexts.acquire();
+        try {
+            RoundContext.Batch batch = ctx.batch();
+
+            for (int start = from; start < from + count; start += RoundContext.Batch.SIZE) {
+                int m = Math.min(RoundContext.Batch.SIZE, from + count - start);
+                for (int k = 0; k < m; k++) {
+                    if (batch.numerals[k] == null) {
+                        batch.numerals[k] = new int[this.maxLen];
+                    }
+                    int[] X = batch.numerals[k];
+                    int value = start + k;
+                    for (int j = digits - 1; j >= 0; j--) {
+                        X[j] = value % this.radix;
+                        value /= this.radix;
+                    }
+                    batch.domains[k] = d;
+                }
+
+                encryptBatch(batch, m, tweak);
+
+                for (int k = 0; k < m; k++) {
+                    int[] X = batch.numerals[k];
+                    int result = 0;
+                    for (int j = 0; j < digits; j++) {
+                        result = result * this.radix + X[j];
+                    }
+                    out[start + k] = result;
+                }
+            }
+        } finally {
+            this.contexts.release(ctx);
+        }
+    }
+
+    /**
+     * Encrypt or decrypt the numerals of a borrowed context in place
+     * @param ctx          the AES cipher and buffers of this call, with the numerals filled in
+     * @param d            the domain of the message length
+     * @param tweak        the tweak
+     * @param encrypt      true to encrypt, false to decrypt
+     */
+    private void cipherNumerals(RoundContext ctx, Domain d, Tweak tweak, boolean encrypt)
+            throws BadPaddingException, IllegalBlockSizeException {
+        int[] X = ctx.numerals;
+
+        // The tweak was validated and split into its per-round schedule when it was created.
+        // Guarded, since capturing lambdas or varargs would allocate on every call even with tracing off.
+        if (logger.isTraceEnabled()) {
+            logger.trace("tweak: {} {}", tweak, d);
+            logger.trace("r {} X {}", this.radix, Arrays.toString(Arrays.copyOf(X, d.n)));
+        }
+
+        switch (d.engine) {
+            case LONG:
+                if (encrypt) {
+                    encryptRounds64(ctx, d, X, tweak);
+                } else {
+                    decryptRounds64(ctx, d, X, tweak);
+                }
+                break;
+            default:
+                if (encrypt) {
+                    encryptRounds128(ctx, d, X, tweak);
+                } else {
+                    decryptRounds128(ctx, d, X, tweak);
+                }
+        }
+    }
+
+    /**
+     * Encrypt many values, running each Feistel round for a batch of records with one AES call
+     * @param plaintexts   the plaintexts to encrypt, of any lengths within the cipher's bounds
+     * @return             the ciphertexts, in the same order
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     * @throws IllegalArgumentException if a value has an invalid length or character
+     */
+    public String[] encryptAll(String[] plaintexts) throws BadPaddingException, IllegalBlockSizeException {
+        return encryptAll(plaintexts, this.tweak);
+    }
+
+    /**
+     * Encrypt many values with a pre-parsed tweak, running each Feistel round for a batch of
+     * records with one AES call
+     * @param plaintexts   the plaintexts to encrypt, of any lengths within the cipher's bounds
+     * @param tweak        a local tweak for encrypting
+     * @return             the ciphertexts, in the same order
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     * @throws IllegalArgumentException if a value has an invalid length or character
+     */
+    public String[] encryptAll(String[] plaintexts, Tweak tweak) throws BadPaddingException, IllegalBlockSizeException {
+        String[] ciphertexts = new String[plaintexts.length];
+        byte[] status = new byte[plaintexts.length];
+        if (cipherAll(plaintexts, ciphertexts, tweak, status, true) > 0) {
+            throwFirstError(plaintexts, status);
+        }
+        return ciphertexts;
+    }
+
+    /**
+     * Decrypt many values, running each Feistel round for a batch of records with one AES call
+     * @param ciphertexts  the ciphertexts to decrypt, of any lengths within the cipher's bounds
+     * @return             the plaintexts, in the same order
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     * @throws IllegalArgumentException if a value has an invalid length or character
+     */
+    public String[] decryptAll(String[] ciphertexts) throws BadPaddingException, IllegalBlockSizeException {
+        return decryptAll(ciphertexts, this.tweak);
+    }
+
+    /**
+     * Decrypt many values with a pre-parsed tweak, running each Feistel round for a batch of
+     * records with one AES call
+     * @param ciphertexts  the ciphertexts to decrypt, of any lengths within the cipher's bounds
      * @param tweak        a local tweak for decrypting
-     * @return             the plaintext
+     * @return             the plaintexts, in the same order
      * @throws BadPaddingException internal error
      * @throws IllegalBlockSizeException internal error
+     * @throws IllegalArgumentException if a value has an invalid length or character
      */
-    @SuppressWarnings("unused")
-    public String decrypt(String ciphertext, String tweak) throws BadPaddingException, IllegalBlockSizeException {
-        this.tweakBytes = hexStringToByteArray(tweak);
-        return decrypt(ciphertext);
+    public String[] decryptAll(String[] ciphertexts, Tweak tweak) throws BadPaddingException, IllegalBlockSizeException {
+        String[] plaintexts = new String[ciphertexts.length];
+        byte[] status = new byte[ciphertexts.length];
+        if (cipherAll(ciphertexts, plaintexts, tweak, status, false) > 0) {
+            throwFirstError(ciphertexts, status);
+        }
+        return plaintexts;
     }
 
     /**
-     * Decrypt a value
-     * @param ciphertext   a ciphertext to decrypt
-     * @return             the plaintext
+     * Encrypt an array of values into an output array. Invalid values do not throw, their
+     * output is set to null and the number of them is returned.
+     * @param in           the plaintexts to encrypt
+     * @param out          receives the ciphertexts, at least as long as in
+     * @return             the number of values that could not be encrypted
      * @throws BadPaddingException internal error
      * @throws IllegalBlockSizeException internal error
      */
-    public String decrypt(String ciphertext) throws BadPaddingException, IllegalBlockSizeException {
-        int n = ciphertext.length();
+    public int encrypt(String[] in, String[] out) throws BadPaddingException, IllegalBlockSizeException {
+        return encrypt(in, out, this.tweak, null);
+    }
+
+    /**
+     * Encrypt an array of values into an output array with a pre-parsed tweak. Invalid values do
+     * not throw, their output is set to null and the reason is recorded in status.
+     * @param in           the plaintexts to encrypt
+     * @param out          receives the ciphertexts, at least as long as in
+     * @param tweak        a local tweak for encrypting
+     * @param status       receives STATUS_OK or the error for each value, or null
+     * @return             the number of values that could not be encrypted
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public int encrypt(String[] in, String[] out, Tweak tweak, byte[] status)
+            throws BadPaddingException, IllegalBlockSizeException {
+        return cipherAll(in, out, tweak, status, true);
+    }
+
+    /**
+     * Decrypt an array of values into an output array. Invalid values do not throw, their
+     * output is set to null and the number of them is returned.
+     * @param in           the ciphertexts to decrypt
+     * @param out          receives the plaintexts, at least as long as in
+     * @return             the number of values that could not be decrypted
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public int decrypt(String[] in, String[] out) throws BadPaddingException, IllegalBlockSizeException {
+        return decrypt(in, out, this.tweak, null);
+    }
+
+    /**
+     * Decrypt an array of values into an output array with a pre-parsed tweak. Invalid values do
+     * not throw, their output is set to null and the reason is recorded in status.
+     * @param in           the ciphertexts to decrypt
+     * @param out          receives the plaintexts, at least as long as in
+     * @param tweak        a local tweak for decrypting
+     * @param status       receives STATUS_OK or the error for each value, or null
+     * @return             the number of values that could not be decrypted
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    public int decrypt(String[] in, String[] out, Tweak tweak, byte[] status)
+            throws BadPaddingException, IllegalBlockSizeException {
+        return cipherAll(in, out, tweak, status, false);
+    }
+
+    /**
+     * Encrypt or decrypt an array of values in batches of RoundContext.Batch.SIZE records. The
+     * values are taken in chunks of RoundContext.Batch.CHUNK, and grouped by length within each
+     * chunk, so consecutive records share a domain.
+     * @param in           the input values
+     * @param out          receives the output values, null where the input is invalid
+     * @param tweak        the tweak
+     * @param status       receives STATUS_OK or the error for each value, or null
+     * @param encrypt      true to encrypt, false to decrypt
+     * @return             the number of invalid values
+     */
+    private int cipherAll(String[] in, String[] out, Tweak tweak, byte[] status, boolean encrypt)
+            throws BadPaddingException, IllegalBlockSizeException {
+        if (out.length < in.length || (status != null && status.length < in.length)) {
+            throw new IllegalArgumentException(String.format("output arrays must hold %d values", in.length));
+        }
+        int failures = 0;
+        RoundContext ctx = this.contexts.acquire();
+        try {
+            for (int from = 0; from < in.length; from += RoundContext.Batch.CHUNK) {
+                int to = Math.min(in.length, from + RoundContext.Batch.CHUNK);
+                failures += cipherChunk(ctx, in, from, to, out, tweak, status, encrypt);
+            }
+            return failures;
+        } finally {
+            this.contexts.release(ctx);
+        }
+    }
+
+    /**
+     * Encrypt or decrypt the values in[from, to), at most RoundContext.Batch.CHUNK of them, with
+     * the scratch arrays of the context's batch
+     * @param ctx          the AES cipher and buffers of this call
+     * @param in           the input values
+     * @param from         the first value of the chunk
+     * @param to           the end of the chunk
+     * @param out          receives the output values, null where the input is invalid
+     * @param tweak        the tweak
+     * @param status       receives STATUS_OK or the error for each value, or null
+     * @param encrypt      true to encrypt, false to decrypt
+     * @return             the number of invalid values in the chunk
+     */
+    private int cipherChunk(RoundContext ctx, String[] in, int from, int to, String[] out, Tweak tweak,
+                            byte[] status, boolean encrypt) throws BadPaddingException, IllegalBlockSizeException {
+        RoundContext.Batch batch = ctx.batch();
+        int failures = 0;
+
+        // Counting sort of the values with a valid length, by length. The length of each value is
+        // recorded once, with 0 for invalid values.
+        int[] start = batch.start;
+        int[] lengths = batch.lengths;
+        int[] order = batch.order;
+        Arrays.fill(start, 0);
+        for (int r = from; r < to; r++) {
+            byte s = lengthStatus(in[r]);
+            if (s == STATUS_OK) {
+                lengths[r - from] = in[r].length();
+                start[lengths[r - from] + 1]++;
+            } else {
+                lengths[r - from] = 0;
+                out[r] = null;
+                failures++;
+            }
+            if (status != null) {
+                status[r] = s;
+            }
+        }
+        for (int n = 1; n < start.length; n++) {
+            start[n] += start[n - 1];
+        }
+        int valid = start[this.maxLen + 1];
+        for (int k = 0; k < to - from; k++) {
+            if (lengths[k] != 0) {
+                order[start[lengths[k]]++] = from + k;
+            }
+        }
+
+        int m = 0;
+        for (int j = 0; j < valid; j++) {
+            int r = order[j];
+            if (batch.numerals[m] == null) {
+                batch.numerals[m] = new int[this.maxLen];
+            }
+            int[] X = batch.numerals[m];
+            if (numerals(in[r], X) >= 0) {
+                out[r] = null;
+                failures++;
+                if (status != null) {
+                    status[r] = STATUS_INVALID_CHARACTER;
+                }
+            } else {
+                batch.domains[m] = this.domains[in[r].length()];
+                batch.index[m] = r;
+                m++;
+            }
 
+            if (m == RoundContext.Batch.SIZE || (m > 0 && j == valid - 1)) {
+                if (encrypt) {
+                    encryptBatch(batch, m, tweak);
+                } else {
+                    decryptBatch(batch, m, tweak);
+                }
+                for (int k = 0; k < m; k++) {
+                    out[batch.index[k]] = fromNumerals(batch.numerals[k], batch.domains[k].n, ctx.chars);
+                }
+                m = 0;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Check a value for a bulk call before converting it
+     * @param str          the value
+     * @return             STATUS_OK, STATUS_NULL or STATUS_INVALID_LENGTH
+     */
+    private byte lengthStatus(String str) {
+        if (str == null) {
+            return STATUS_NULL;
+        }
+        int n = str.length();
+        return (n < this.minLen || n > this.maxLen) ? STATUS_INVALID_LENGTH : STATUS_OK;
+    }
+
+    /**
+     * Throw the exception that the single-value methods would for the first invalid value
+     * @param in           the input values
+     * @param status       the status of each value, with at least one error
+     */
+    private void throwFirstError(String[] in, byte[] status) {
+        for (int r = 0; r < in.length; r++) {
+            if (status[r] == STATUS_NULL) {
+                throw new NullPointerException(String.format("value %d is null", r));
+            } else if (status[r] != STATUS_OK) {
+                domain(in[r].length());
+                // the value is known to be invalid, so this throws
+                toNumerals(in[r], new int[in[r].length()]);
+            }
+        }
+        throw new IllegalStateException("no invalid value found");
+    }
+
+    /**
+     * Return the precomputed parameters for a message length
+     * @param n            the message length
+     * @return             the domain for length n
+     * @throws IllegalArgumentException if n is not within minLen and maxLen
+     */
+    private Domain domain(int n) {
         // Check if message length is within minLength and maxLength bounds
         if ((n < this.minLen) || (n > this.maxLen)) {
             throw new IllegalArgumentException(String.format("message length %d is not within min %d and max %d bounds",
                     n, this.minLen, this.maxLen));
         }
+        return this.domains[n];
+    }
+
+    /**
+     * Check that a range lies within an array
+     * @param arrayLength  the array length
+     * @param offset       the start of the range
+     * @param length       the length of the range
+     * @throws IndexOutOfBoundsException if the range is not within the array
+     */
+    private static void checkRange(int arrayLength, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > arrayLength - length) {
+            throw new IndexOutOfBoundsException(String.format("range [%d, %d) out of bounds for length %d",
+                    offset, offset + length, arrayLength));
+        }
+    }
+
+    /**
+     * Convert characters to numerals, the index of each character in the alphabet
+     * @param str          a string in the cipher alphabet
+     * @param X            receives the numerals, at least str.length() long
+     * @throws IllegalArgumentException if a character is not in the alphabet
+     */
+    private void toNumerals(CharSequence str, int[] X) {
+        int j = numerals(str, X);
+        if (j >= 0) {
+            throw invalidCharacter(j);
+        }
+    }
+
+    /**
+     * Convert a range of characters to numerals, the index of each character in the alphabet
+     * @param in           holds the characters
+     * @param offset       the position of the first character
+     * @param length       the number of characters
+     * @param X            receives the numerals, at least length long
+     * @throws IllegalArgumentException if a character is not in the alphabet
+     */
+    private void toNumerals(char[] in, int offset, int length, int[] X) {
+        for (int j = 0; j < length; j++) {
+            int numeral = this.alphabetIndex.indexOf(in[offset + j]);
+            if (numeral < 0) {
+                throw invalidCharacter(j);
+            }
+            X[j] = numeral;
+        }
+    }
+
+    /**
+     * Convert characters to numerals without throwing
+     * @param str          the characters
+     * @param X            receives the numerals, at least str.length() long
+     * @return             the position of the first character not in the alphabet, or -1
+     */
+    private int numerals(CharSequence str, int[] X) {
+        for (int j = 0; j < str.length(); j++) {
+            int numeral = this.alphabetIndex.indexOf(str.charAt(j));
+            if (numeral < 0) {
+                return j;
+            }
+            X[j] = numeral;
+        }
+        return -1;
+    }
+
+    /**
+     * Check that the alphabet can be used with the single-byte methods
+     * @throws UnsupportedOperationException if the alphabet has characters above 0xFF
+     */
+    private void checkSingleByte() {
+        if (!this.alphabetIndex.isSingleByte()) {
+            throw new UnsupportedOperationException("alphabet has characters that are not single bytes");
+        }
+    }
+
+    /**
+     * Convert a range of single-byte characters to numerals with the 256-entry byte table
+     * @param in           holds the characters
+     * @param offset       the position of the first byte
+     * @param length       the number of bytes
+     * @param X            receives the numerals, at least length long
+     * @throws IllegalArgumentException if a character is not in the alphabet
+     */
+    private void toNumerals(byte[] in, int offset, int length, int[] X) {
+        for (int j = 0; j < length; j++) {
+            int numeral = this.alphabetIndex.indexOf(in[offset + j]);
+            if (numeral < 0) {
+                throw invalidCharacter(j);
+            }
+            X[j] = numeral;
+        }
+    }
+
+    /**
+     * Convert the first n numerals back to single-byte characters
+     * @param X            the numerals
+     * @param n            the number of numerals
+     * @param out          receives the bytes
+     * @param offset       the position in out of the first byte
+     */
+    private void fromNumerals(int[] X, int n, byte[] out, int offset) {
+        for (int j = 0; j < n; j++) {
+            out[offset + j] = (byte) this.alphabet.charAt(X[j]);
+        }
+    }
 
-        // Calculate split point
-        int u = (int) Math.ceil(n / 2.0);
-        int v = n - u;
+    private static IllegalArgumentException invalidCharacter(int position) {
+        return new IllegalArgumentException(String.format("character at position %d is not in the alphabet", position));
+    }
 
-        // Split the message
-        String A = ciphertext.substring(0, u);
-        String B = ciphertext.substring(u);
+    /**
+     * Convert the first n numerals back to a string, using a scratch character array
+     * @param X            the numerals
+     * @param n            the number of numerals
+     * @param chars        a scratch array of at least n characters
+     * @return             the string
+     */
+    private String fromNumerals(int[] X, int n, char[] chars) {
+        fromNumerals(X, n, chars, 0);
+        return new String(chars, 0, n);
+    }
 
-        if ((this.tweakBytes.length != TWEAK_LEN) && (this.tweakBytes.length != TWEAK_LEN_NEW)) {
-            throw new IllegalArgumentException(String.format("tweak length %d is invalid: tweak must be 56 or 64 bits",
-                    this.tweakBytes.length));
+    /**
+     * Convert the first n numerals back to characters in the cipher alphabet
+     * @param X            the numerals
+     * @param n            the number of numerals
+     * @param out          receives the characters
+     * @param offset       the position in out of the first character
+     */
+    private void fromNumerals(int[] X, int n, char[] out, int offset) {
+        for (int j = 0; j < n; j++) {
+            out[offset + j] = this.alphabet.charAt(X[j]);
         }
+    }
 
-        // Calculate the tweak
-        logger.trace("tweak: {}", () -> byteArrayToHexString(this.tweakBytes));
+    /**
+     * Encrypt numerals in place with 64-bit arithmetic, when radix^u fits in a long
+     * @param ctx          the AES cipher and buffers of this call
+     * @param d            the domain, with the split point u and the moduli
+     * @param X            the numerals, A = X[0..u) and B = X[u..n)
+     * @param tweak        the tweak
+     */
+    private void encryptRounds64(RoundContext ctx, Domain d, int[] X, Tweak tweak)
+            throws BadPaddingException, IllegalBlockSizeException {
+        int u = d.u, v = d.v;
+        long modU = d.modU;
+        long modV = d.modV;
 
-        byte[] tweak64 = (this.tweakBytes.length == TWEAK_LEN_NEW) ?
-                calculateTweak64_FF3_1(this.tweakBytes) : this.tweakBytes;
+        long a = decodeLong(X, 0, u);
+        long b = decodeLong(X, u, v);
 
-        byte[] Tl = Arrays.copyOf(tweak64, HALF_TWEAK_LEN);
-        byte[] Tr = Arrays.copyOfRange(tweak64, HALF_TWEAK_LEN, TWEAK_LEN);
+        for (byte i = 0; i < NUM_ROUNDS; ++i) {
+            long mod = (i % 2 == 0) ? modU : modV;
 
-        // P is always 16 bytes
-        byte[] P;
+            ctx.round(tweak.roundPrefix(i), 0, b);
+            long y = UInt128.remainder(ctx.yHi, ctx.yLo, mod);
 
-        // Pre-calculate the modulus since it's only one of 2 values,
-        // depending on whether it is even or odd
+            // c = (a + y) mod m, both operands are less than m so this cannot overflow
+            long c = a - (mod - y);
+            if (c < 0) {
+                c += mod;
+            }
 
-        BigInteger modU = BigInteger.valueOf(this.radix).pow(u);
-        BigInteger modV = BigInteger.valueOf(this.radix).pow(v);
-        logger.trace("modU: {} modV: {}", modU, modV);
-        logger.trace("tL: {} tR: {}", () -> byteArrayToHexString(Tl), () -> byteArrayToHexString(Tr));
+            a = b;
+            b = c;
+        }
+        encodeLong(a, X, 0, u);
+        encodeLong(b, X, u, v);
+    }
+
+    /**
+     * Decrypt numerals in place with 64-bit arithmetic, when radix^u fits in a long
+     * @param ctx          the AES cipher and buffers of this call
+     * @param d            the domain, with the split point u and the moduli
+     * @param X            the numerals, A = X[0..u) and B = X[u..n)
+     * @param tweak        the tweak
+     */
+    private void decryptRounds64(RoundContext ctx, Domain d, int[] X, Tweak tweak)
+            throws BadPaddingException, IllegalBlockSizeException {
+        int u = d.u, v = d.v;
+        long modU = d.modU;
+        long modV = d.modV;
+
+        long a = decodeLong(X, 0, u);
+        long b = decodeLong(X, u, v);
 
         for (byte i = (byte) (NUM_ROUNDS - 1); i >= 0; --i) {
-            int m;
-            BigInteger c;
-            byte[] W;
-
-            // Determine alternating Feistel round side, right or left
-            if (i % 2 == 0) {
-                m = u;
-                W = Tr;
-            } else {
-                m = v;
-                W = Tl;
+            long mod = (i % 2 == 0) ? modU : modV;
+
+            ctx.round(tweak.roundPrefix(i), 0, a);
+            long y = UInt128.remainder(ctx.yHi, ctx.yLo, mod);
+
+            // c = (b - y) mod m
+            long c = b - y;
+            if (c < 0) {
+                c += mod;
             }
 
-            // P is fixed-length 16 bytes
-            P = calculateP(i, this.alphabet, W, A);
-            reverseBytes(P);
+            b = a;
+            a = c;
+        }
+        encodeLong(a, X, 0, u);
+        encodeLong(b, X, u, v);
+    }
 
-            // Calculate S by operating on P in place
-            byte[] S = this.aesCipher.doFinal(P);
-            reverseBytes(S);
-            logger.trace("\tS: {}", () -> byteArrayToHexString(S));
+    /**
+     * Encrypt numerals in place with 128-bit arithmetic on (hi, lo) pairs, when radix^u exceeds
+     * a long but is within the 96-bit FF3 limit
+     * @param ctx          the AES cipher and buffers of this call
+     * @param d            the domain, with the split point u and the moduli
+     * @param X            the numerals, A = X[0..u) and B = X[u..n)
+     * @param tweak        the tweak
+     */
+    private void encryptRounds128(RoundContext ctx, Domain d, int[] X, Tweak tweak)
+            throws BadPaddingException, IllegalBlockSizeException {
+        int u = d.u, v = d.v;
+        long[] modU = d.wideModU;
+        long[] modV = d.wideModV;
+        double modUDouble = d.wideModUDouble;
+        double modVDouble = d.wideModVDouble;
+
+        long[] a = decodeWide(X, 0, u, ctx.a);
+        long[] b = decodeWide(X, u, v, ctx.b);
+        long[] y = ctx.y;
 
-            BigInteger y = new BigInteger(byteArrayToHexString(S), 16);
+        for (byte i = 0; i < NUM_ROUNDS; ++i) {
+            long[] mod = (i % 2 == 0) ? modU : modV;
+            double modDouble = (i % 2 == 0) ? modUDouble : modVDouble;
+
+            ctx.round(tweak.roundPrefix(i), b[0], b[1]);
+            y[0] = ctx.yHi;
+            y[1] = ctx.yLo;
+            UInt128.remainder(y, mod[0], mod[1], modDouble);
+
+            // c = (a + y) mod m, computed in place in a which then becomes B
+            UInt128.addMod(a, y, mod);
+            long[] c = a;
+            a = b;
+            b = c;
+        }
+        encodeWide(a, X, 0, u);
+        encodeWide(b, X, u, v);
+    }
 
-            // Calculate c
-            c = decode_int(reverseString(B), alphabet);
+    /**
+     * Decrypt numerals in place with 128-bit arithmetic on (hi, lo) pairs, when radix^u exceeds
+     * a long but is within the 96-bit FF3 limit
+     * @param ctx          the AES cipher and buffers of this call
+     * @param d            the domain, with the split point u and the moduli
+     * @param X            the numerals, A = X[0..u) and B = X[u..n)
+     * @param tweak        the tweak
+     */
+    private void decryptRounds128(RoundContext ctx, Domain d, int[] X, Tweak tweak)
+            throws BadPaddingException, IllegalBlockSizeException {
+        int u = d.u, v = d.v;
+        long[] modU = d.wideModU;
+        long[] modV = d.wideModV;
+        double modUDouble = d.wideModUDouble;
+        double modVDouble = d.wideModVDouble;
+
+        long[] a = decodeWide(X, 0, u, ctx.a);
+        long[] b = decodeWide(X, u, v, ctx.b);
+        long[] y = ctx.y;
 
-            c = c.subtract(y);
+        for (byte i = (byte) (NUM_ROUNDS - 1); i >= 0; --i) {
+            long[] mod = (i % 2 == 0) ? modU : modV;
+            double modDouble = (i % 2 == 0) ? modUDouble : modVDouble;
+
+            ctx.round(tweak.roundPrefix(i), a[0], a[1]);
+            y[0] = ctx.yHi;
+            y[1] = ctx.yLo;
+            UInt128.remainder(y, mod[0], mod[1], modDouble);
+
+            // c = (b - y) mod m, computed in place in b which then becomes A
+            UInt128.subtractMod(b, y, mod);
+            long[] c = b;
+            b = a;
+            a = c;
+        }
+        encodeWide(a, X, 0, u);
+        encodeWide(b, X, u, v);
+    }
 
-            if (i % 2 == 0) {
-                c = c.mod(modU);
-            } else {
-                c = c.mod(modV);
+    /**
+     * Encrypt the numerals of the first m records of a batch in place, with the 64-bit or
+     * 128-bit arithmetic of each record's domain
+     * @param batch        the batch, with numerals and domains filled in
+     * @param m            the number of records
+     * @param tweak        the tweak
+     */
+    private void encryptBatch(RoundContext.Batch batch, int m, Tweak tweak)
+            throws BadPaddingException, IllegalBlockSizeException {
+        long[] aHi = batch.aHi, aLo = batch.aLo;
+        long[] bHi = batch.bHi, bLo = batch.bLo;
+        long[] yHi = batch.yHi, yLo = batch.yLo;
+        long[] x = batch.x, y = batch.y;
+
+        for (int k = 0; k < m; k++) {
+            Domain d = batch.domains[k];
+            decodeHalf(d, batch.numerals[k], 0, d.u, aHi, aLo, k, x);
+            decodeHalf(d, batch.numerals[k], d.u, d.v, bHi, bLo, k, x);
+        }
+
+        for (byte i = 0; i < NUM_ROUNDS; ++i) {
+            boolean even = (i % 2 == 0);
+            batch.round(tweak.roundPrefix(i), bHi, bLo, m);
+
+            // c = (a + y) mod m, computed in place in A which then becomes B
+            for (int k = 0; k < m; k++) {
+                Domain d = batch.domains[k];
+                if (d.engine == Domain.Engine.LONG) {
+                    long mod = even ? d.modU : d.modV;
+                    long c = aLo[k] - (mod - UInt128.remainder(yHi[k], yLo[k], mod));
+                    aLo[k] = (c < 0) ? c + mod : c;
+                } else {
+                    long[] mod = even ? d.wideModU : d.wideModV;
+                    y[0] = yHi[k];
+                    y[1] = yLo[k];
+                    UInt128.remainder(y, mod[0], mod[1], even ? d.wideModUDouble : d.wideModVDouble);
+                    x[0] = aHi[k];
+                    x[1] = aLo[k];
+                    UInt128.addMod(x, y, mod);
+                    aHi[k] = x[0];
+                    aLo[k] = x[1];
+                }
+            }
+            long[] t = aHi;
+            aHi = bHi;
+            bHi = t;
+            t = aLo;
+            aLo = bLo;
+            bLo = t;
+        }
+
+        for (int k = 0; k < m; k++) {
+            Domain d = batch.domains[k];
+            encodeHalf(d, aHi[k], aLo[k], batch.numerals[k], 0, d.u, x);
+            encodeHalf(d, bHi[k], bLo[k], batch.numerals[k], d.u, d.v, x);
+        }
+    }
+
+    /**
+     * Decrypt the numerals of the first m records of a batch in place, with the 64-bit or
+     * 128-bit arithmetic of each record's domain
+     * @param batch        the batch, with numerals and domains filled in
+     * @param m            the number of records
+     * @param tweak        the tweak
+     */
+    private void decryptBatch(RoundContext.Batch batch, int m, Tweak tweak)
+            throws BadPaddingException, IllegalBlockSizeException {
+        long[] aHi = batch.aHi, aLo = batch.aLo;
+        long[] bHi = batch.bHi, bLo = batch.bLo;
+        long[] yHi = batch.yHi, yLo = batch.yLo;
+        long[] x = batch.x, y = batch.y;
+
+        for (int k = 0; k < m; k++) {
+            Domain d = batch.domains[k];
+            decodeHalf(d, batch.numerals[k], 0, d.u, aHi, aLo, k, x);
+            decodeHalf(d, batch.numerals[k], d.u, d.v, bHi, bLo, k, x);
+        }
+
+        for (byte i = (byte) (NUM_ROUNDS - 1); i >= 0; --i) {
+            boolean even = (i % 2 == 0);
+            batch.round(tweak.roundPrefix(i), aHi, aLo, m);
+
+            // c = (b - y) mod m, computed in place in B which then becomes A
+            for (int k = 0; k < m; k++) {
+                Domain d = batch.domains[k];
+                if (d.engine == Domain.Engine.LONG) {
+                    long mod = even ? d.modU : d.modV;
+                    long c = bLo[k] - UInt128.remainder(yHi[k], yLo[k], mod);
+                    bLo[k] = (c < 0) ? c + mod : c;
+                } else {
+                    long[] mod = even ? d.wideModU : d.wideModV;
+                    y[0] = yHi[k];
+                    y[1] = yLo[k];
+                    UInt128.remainder(y, mod[0], mod[1], even ? d.wideModUDouble : d.wideModVDouble);
+                    x[0] = bHi[k];
+                    x[1] = bLo[k];
+                    UInt128.subtractMod(x, y, mod);
+                    bHi[k] = x[0];
+                    bLo[k] = x[1];
+                }
             }
+            long[] t = bHi;
+            bHi = aHi;
+            aHi = t;
+            t = bLo;
+            bLo = aLo;
+            aLo = t;
+        }
+
+        for (int k = 0; k < m; k++) {
+            Domain d = batch.domains[k];
+            encodeHalf(d, aHi[k], aLo[k], batch.numerals[k], 0, d.u, x);
+            encodeHalf(d, bHi[k], bLo[k], batch.numerals[k], d.u, d.v, x);
+        }
+    }
+
+    /**
+     * Decode a half into element k of the (hi, lo) arrays of a batch
+     * @param d            the domain, which selects 64-bit or 128-bit decoding
+     * @param X            the numerals
+     * @param off          the offset of the first (least significant) numeral
+     * @param len          the number of numerals
+     * @param hi           receives the high word
+     * @param lo           receives the low word
+     * @param k            the record in the batch
+     * @param scratch      a 2-element scratch array
+     */
+    private void decodeHalf(Domain d, int[] X, int off, int len, long[] hi, long[] lo, int k, long[] scratch) {
+        if (d.engine == Domain.Engine.LONG) {
+            hi[k] = 0;
+            lo[k] = decodeLong(X, off, len);
+        } else {
+            decodeWide(X, off, len, scratch);
+            hi[k] = scratch[0];
+            lo[k] = scratch[1];
+        }
+    }
 
-            logger.trace("\tm: {} B: {} c: {} y: {}", m, B, c, y);
+    /**
+     * Encode a half held as a (hi, lo) pair
+     * @param d            the domain, which selects 64-bit or 128-bit encoding
+     * @param hi           the high word
+     * @param lo           the low word
+     * @param X            the output numerals
+     * @param off          the offset of the first (least significant) numeral
+     * @param len          the number of numerals to write
+     * @param scratch      a 2-element scratch array
+     */
+    private void encodeHalf(Domain d, long hi, long lo, int[] X, int off, int len, long[] scratch) {
+        if (d.engine == Domain.Engine.LONG) {
+            encodeLong(lo, X, off, len);
+        } else {
+            scratch[0] = hi;
+            scratch[1] = lo;
+            encodeWide(scratch, X, off, len);
+        }
+    }
 
-            String C = encode_int_r(c, this.alphabet, m);
+    /**
+     * Decode numerals into a long, least significant numeral first,
+     * i.e. NUM(REV(X[off..off+len)))
+     * @param X            the numerals
+     * @param off          the offset of the first (least significant) numeral
+     * @param len          the number of numerals, at most maxLongHalfLen
+     * @return             the integer value
+     */
+    private long decodeLong(int[] X, int off, int len) {
+        long num = 0;
+        for (int j = off + len - 1; j >= off; j--) {
+            num = num * this.radix + X[j];
+        }
+        return num;
+    }
 
-            // Final steps
-            B = A;
-            A = C;
-            logger.trace("A: {} B: {}", A, B);
+    /**
+     * Encode a long as numerals, least significant numeral first, i.e. REV(STR(n))
+     * @param n            a non-negative number less than radix^len
+     * @param X            the output numerals
+     * @param off          the offset of the first (least significant) numeral
+     * @param len          the number of numerals to write
+     */
+    private void encodeLong(long n, int[] X, int off, int len) {
+        for (int j = off; j < off + len; j++) {
+            X[j] = (int) (n % this.radix);
+            n /= this.radix;
         }
-        return A + B;
+    }
+
+    /**
+     * Decode numerals into a 128-bit value, least significant numeral first. The low
+     * maxLongHalfLen numerals and the rest are each decoded as a long, then combined as
+     * high * radix^maxLongHalfLen + low.
+     * @param X            the numerals
+     * @param off          the offset of the first (least significant) numeral
+     * @param len          the number of numerals, at most maxWideHalfLen
+     * @param out          receives {hi, lo}
+     * @return             out
+     */
+    private long[] decodeWide(int[] X, int off, int len, long[] out) {
+        // Halves in the wide engine have at least maxLongHalfLen numerals
+        int k = this.maxLongHalfLen;
+        long low = decodeLong(X, off, k);
+        long high = decodeLong(X, off + k, len - k);
+        long p = this.longChunk;
+
+        out[1] = high * p + low;
+        out[0] = UInt128.multiplyHigh(high, p) + (Long.compareUnsigned(out[1], low) < 0 ? 1 : 0);
+        return out;
+    }
+
+    /**
+     * Encode a 128-bit value as numerals, least significant numeral first
+     * @param n            {hi, lo}, a number less than radix^len
+     * @param X            the output numerals
+     * @param off          the offset of the first (least significant) numeral
+     * @param len          the number of numerals to write, at most maxWideHalfLen
+     */
+    private void encodeWide(long[] n, int[] X, int off, int len) {
+        int k = this.maxLongHalfLen;
+        long p = this.longChunk;
+
+        // n < 2^97 and p >= 2^55, so the high word is below p and the quotient fits in a long
+        long high = UInt128.divide(n[0], n[1], p);
+        long low = n[1] - high * p;
+        encodeLong(low, X, off, k);
+        encodeLong(high, X, off + k, len - k);
+    }
+
+    /**
+     * The largest half length m such that radix^m does not exceed a limit
+     * @param radix        the radix
+     * @param limit        the maximum domain size
+     * @return             the largest m with radix^m &lt;= limit
+     */
+    protected static int maxHalfLength(int radix, BigInteger limit) {
+        BigInteger bradix = BigInteger.valueOf(radix);
+        int m = 0;
+        for (BigInteger p = bradix; p.compareTo(limit) <= 0; p = p.multiply(bradix)) {
+            m++;
+        }
+        return m;
+    }
+
+    /**
+     * Integer power without overflow checks, callers ensure the result fits in a long
+     * @param radix        the base
+     * @param exponent     the exponent
+     * @return             radix^exponent
+     */
+    private static long pow(int radix, int exponent) {
+        long p = 1;
+        for (int j = 0; j < exponent; j++) {
+            p *= radix;
+        }
+        return p;
     }
 
     /**
@@ -379,11 +1692,23 @@ public class FF3Cipher {
         B = reverseString(B);
         byte[] bBytes = decode_int(B, alphabet).toByteArray();
 
-        System.arraycopy(bBytes, 0, P, (BLOCK_SIZE - bBytes.length), bBytes.length);
+        // NUM(REV(B)) is less than 2^96, but toByteArray prepends a sign byte when bit 95 is set
+        int len = Math.min(bBytes.length, BLOCK_SIZE - 4);
+        System.arraycopy(bBytes, bBytes.length - len, P, (BLOCK_SIZE - len), len);
         logger.trace("round: {} W: {} P: {}", () -> i, () -> byteArrayToHexString(W), () -> byteArrayToIntString(P));
         return P;
     }
 
+    /**
+     * The first 4 bytes of P for round i, W XOR i as a big-endian int
+     * @param i            the round number
+     * @param W            the 4-byte half of the tweak for this round
+     * @return             the prefix of P
+     */
+    static int roundPrefix(int i, byte[] W) {
+        return ((W[0] & 0xFF) << 24 | (W[1] & 0xFF) << 16 | (W[2] & 0xFF) << 8 | (W[3] & 0xFF)) ^ i;
+    }
+
     /**
      * Reverse an immutable string
      * @param s            the original string
@@ -462,18 +1787,27 @@ public class FF3Cipher {
         char[] x = new char[length];
         int i=0;
 
-        BigInteger bbase =  BigInteger.valueOf(alphabet.length());
-        while (n.compareTo(bbase) >= 0) {
-            BigInteger b = n.mod(bbase);
-            n = n.divide(bbase);
-            x[i++] = alphabet.charAt(b.intValue());
+        // Divide by the largest power of the radix that fits in a long, so only one BigInteger
+        // division is needed per chunk of k digits, and the digits of each chunk come from a long
+        int radix = alphabet.length();
+        int k = longDigits(radix);
+        BigInteger bbase = BigInteger.valueOf(pow(radix, k));
+        while (n.bitLength() > 63) {
+            BigInteger[] qr = n.divideAndRemainder(bbase);
+            long r = qr[1].longValue();
+            for (int d = 0; d < k; d++) {
+                x[i++] = alphabet.charAt((int) (r % radix));
+                r /= radix;
+            }
+            n = qr[0];
         }
-        x[i++] = alphabet.charAt(n.intValue());
 
-        // pad with zeros-index value if necessary
-        while (i < length) {
-            x[i++] = alphabet.charAt(0);
-        }
+        // the rest fits in a long, and is padded with zeros-index value if necessary
+        long r = n.longValue();
+        do {
+            x[i++] = alphabet.charAt((int) (r % radix));
+            r /= radix;
+        } while (i < length);
         return new String(x);
     }
 
@@ -486,17 +1820,37 @@ public class FF3Cipher {
     protected static BigInteger decode_int(String str, String alphabet) {
 
         int strlen = str.length();
-        BigInteger base = BigInteger.valueOf(alphabet.length());
+        int radix = alphabet.length();
+
+        // Horner's rule on chunks of k digits accumulated in a long, the first chunk takes the
+        // leftover digits so the rest are all full and are shifted in by multiplying with base
+        int k = longDigits(radix);
+        BigInteger base = BigInteger.valueOf(pow(radix, k));
         BigInteger num = BigInteger.ZERO;
-        int idx =0;
-        for (char each : str.toCharArray()) {
-            int exponent = (strlen - (idx + 1));
-            num = num.add(base.pow(exponent).multiply(BigInteger.valueOf(alphabet.indexOf(each))));
-            idx += 1;
+        int chunk = (strlen % k == 0) ? k : strlen % k;
+        for (int idx = 0; idx < strlen; idx += chunk, chunk = k) {
+            long value = 0;
+            for (int j = idx; j < idx + chunk; j++) {
+                value = value * radix + alphabet.indexOf(str.charAt(j));
+            }
+            num = (idx == 0) ? BigInteger.valueOf(value) : num.multiply(base).add(BigInteger.valueOf(value));
         }
         return num;
     }
 
+    /**
+     * The number of digits in the largest power of the radix that fits in a long
+     * @param radix        the radix
+     * @return             the largest k with radix^k &lt;= Long.MAX_VALUE
+     */
+    private static int longDigits(int radix) {
+        int k = 0;
+        for (long p = 1; p <= Long.MAX_VALUE / radix; p *= radix) {
+            k++;
+        }
+        return k;
+    }
+
     /**
      * Return the canonical alphabet for a given base
      * @param base          a base
@@ -521,12 +1875,20 @@ public class FF3Cipher {
     private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
     private static final int NUM_ROUNDS =   8;
     private static final int BLOCK_SIZE =   16;      // aes.BlockSize
-    private static final int TWEAK_LEN =    8;       // Original FF3 64-bit tweak length
-    private static final int TWEAK_LEN_NEW =  7;     // FF3-1 56-bit tweak length
-    private static final int HALF_TWEAK_LEN = TWEAK_LEN/2;
+    private static final int TWEAK_CACHE_SIZE = 256;
+    private static final int CONTEXT_POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
     private static int MAX_RADIX =    256;
     private static final Logger logger = LogManager.getLogger(FF3Cipher.class.getName());
 
+    /** bulk status: the value was encrypted or decrypted */
+    public static final byte STATUS_OK = 0;
+    /** bulk status: the value is null */
+    public static final byte STATUS_NULL = 1;
+    /** bulk status: the length of the value is not within the cipher's bounds */
+    public static final byte STATUS_INVALID_LENGTH = 2;
+    /** bulk status: the value has a character that is not in the alphabet */
+    public static final byte STATUS_INVALID_CHARACTER = 3;
+
     /** The recommendation in Draft SP 800-38G was strengthened to a requirement in Draft SP 800-38G Revision 1:
        the minimum domain size for FF1 and FF3-1 is one million */
     public static int DOMAIN_MIN =  1000000;  // 1M
@@ -536,8 +1898,15 @@ public class FF3Cipher {
 
     private final int radix;
     private final String alphabet;
-    private byte[] tweakBytes;
+    private final AlphabetIndex alphabetIndex;
+    private final Tweak tweak;
+    private final ConcurrentHashMap<String, Tweak> tweakCache = new ConcurrentHashMap<>();
     private final int minLen;
     private final int maxLen;
-    private final Cipher aesCipher;
+    private final int maxLongHalfLen;
+    private final int maxWideHalfLen;
+    private final long longChunk;           // radix^maxLongHalfLen
+    private final Domain[] domains;         // indexed by message length
+    private final SecretKeySpec keySpec;
+    private final ContextPool contexts;
 }
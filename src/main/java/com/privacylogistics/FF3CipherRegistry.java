@@ -0,0 +1,258 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of ready-to-use ciphers for multi-tenant workloads with one key per tenant,
+ * keyed by (key id, alphabet). Constructing an FF3Cipher parses the key, looks up the AES
+ * provider and expands the key schedule, so ciphers are created once and reused until they are
+ * the least recently used entry of a full registry.
+ *
+ * Lookups are thread-safe, and a lookup that finds its cipher takes no lock. When several threads
+ * ask for the same missing cipher, one of them constructs it and the others wait for it.
+ *
+ * Recency is approximate: each entry is stamped with the number of misses so far when it is used,
+ * and a miss that overflows the registry evicts the entry with the oldest stamp. Hits only write
+ * the stamp when it is out of date, so threads sharing a hot cipher do not contend on it.
+ */
+public final class FF3CipherRegistry {
+
+    /**
+     * Create an empty registry
+     * @param keyLoader    returns the hex AES key for a key id, called once per construction
+     * @param tweak        the default tweak of every cipher, callers usually pass their own
+     * @param maxSize      the maximum number of ciphers kept
+     */
+    public FF3CipherRegistry(Function<String, String> keyLoader, String tweak, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        // Fail here for a bad tweak rather than on every construction
+        Tweak.of(tweak);
+        this.keyLoader = keyLoader;
+        this.tweak = tweak;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Return the cipher for a key with the digits alphabet
+     * @param keyId        the key id
+     * @return             the cipher
+     */
+    public FF3Cipher get(String keyId) {
+        return get(keyId, FF3Cipher.DIGITS);
+    }
+
+    /**
+     * Return the cipher for a key and alphabet, constructing it if it is not in the registry
+     * @param keyId        the key id
+     * @param alphabet     the cipher alphabet
+     * @return             the cipher
+     * @throws IllegalArgumentException if the key or alphabet is invalid
+     */
+    public FF3Cipher get(String keyId, String alphabet) {
+        Key key = new Key(keyId, alphabet);
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            Entry created = new Entry(new FutureTask<>(() -> construct(keyId, alphabet)), this.clock.incrementAndGet());
+            entry = this.entries.putIfAbsent(key, created);
+            if (entry == null) {
+                this.misses.increment();
+                created.task.run();
+                // A failed construction is removed by await and must not displace a cipher
+                FF3Cipher cipher = await(key, created);
+                evictIfFull();
+                return cipher;
+            }
+        }
+        this.hits.increment();
+        long now = this.clock.get();
+        if (entry.accessed != now) {
+            entry.accessed = now;
+        }
+        return await(key, entry);
+    }
+
+    /**
+     * Wait for the construction of an entry's cipher
+     * @param key          the key of the entry
+     * @param entry        the entry
+     * @return             the cipher
+     */
+    private FF3Cipher await(Key key, Entry entry) {
+        try {
+            return entry.task.get();
+        } catch (ExecutionException e) {
+            // Forget the failure so a later call can retry, e.g. after the key is provisioned
+            this.entries.remove(key, entry);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Evict the entries with the oldest stamps until the registry is within maxSize. This runs
+     * after a miss, which has just paid for a construction, so a scan of the entries is cheap in
+     * comparison.
+     */
+    private void evictIfFull() {
+        synchronized (this.evictionLock) {
+            while (this.entries.size() > this.maxSize) {
+                Map.Entry<Key, Entry> oldest = null;
+                for (Map.Entry<Key, Entry> e : this.entries.entrySet()) {
+                    if (oldest == null || e.getValue().accessed < oldest.getValue().accessed) {
+                        oldest = e;
+                    }
+                }
+                if (oldest != null && this.entries.remove(oldest.getKey(), oldest.getValue())) {
+                    this.evictions.increment();
+                }
+            }
+        }
+    }
+
+    private FF3Cipher construct(String keyId, String alphabet) {
+        long start = System.nanoTime();
+        String key = this.keyLoader.apply(keyId);
+        if (key == null) {
+            throw new IllegalArgumentException("no key for id " + keyId);
+        }
+        FF3Cipher cipher = new FF3Cipher(key, this.tweak, alphabet);
+        this.constructions.increment();
+        this.constructionNanos.add(System.nanoTime() - start);
+        return cipher;
+    }
+
+    /**
+     * Remove every cipher of a key, e.g. after the key is rotated
+     * @param keyId        the key id
+     */
+    public void invalidate(String keyId) {
+        this.entries.keySet().removeIf(key -> key.keyId.equals(keyId));
+    }
+
+    /**
+     * @return             the number of ciphers in the registry
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return             the number of lookups that found a cipher in the registry
+     */
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return             the number of lookups that had to construct a cipher
+     */
+    public long misses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return             the number of ciphers constructed successfully
+     */
+    public long constructions() {
+        return this.constructions.sum();
+    }
+
+    /**
+     * @return             the total time spent constructing ciphers, including loading keys
+     */
+    public long constructionNanos() {
+        return this.constructionNanos.sum();
+    }
+
+    /**
+     * @return             the number of ciphers evicted because the registry was full
+     */
+    public long evictions() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * A (key id, alphabet) pair
+     */
+    private static final class Key {
+
+        Key(String keyId, String alphabet) {
+            this.keyId = keyId;
+            this.alphabet = alphabet;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return this.keyId.equals(k.keyId) && this.alphabet.equals(k.alphabet);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.keyId.hashCode() + this.alphabet.hashCode();
+        }
+
+        private final String keyId;
+        private final String alphabet;
+    }
+
+    /**
+     * A cipher, possibly still being constructed, with the miss count when it was last used
+     */
+    private static final class Entry {
+
+        Entry(FutureTask<FF3Cipher> task, long accessed) {
+            this.task = task;
+            this.accessed = accessed;
+        }
+
+        final FutureTask<FF3Cipher> task;
+        volatile long accessed;
+    }
+
+    private final Function<String, String> keyLoader;
+    private final String tweak;
+    private final int maxSize;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final Object evictionLock = new Object();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder constructions = new LongAdder();
+    private final LongAdder constructionNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+}
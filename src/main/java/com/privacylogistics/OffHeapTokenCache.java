@@ -0,0 +1,301 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A TokenCache held in direct ByteBuffers outside the Java heap, so that millions of entries do
+ * not add to garbage collection work. FPE preserves length, so every entry of a message length
+ * has the same size: a state byte, the tweak as 8 bytes, and the input and output as one byte per
+ * numeral. Each length has its own slab, allocated on first use.
+ *
+ * A slab is an open addressing table probed over a bucket of WAYS consecutive slots. When a bucket
+ * is full, CLOCK (second chance) eviction within the bucket picks the entry to replace. Buckets are
+ * guarded by striped locks, so the cache is safe for concurrent use.
+ *
+ * The alphabet must have at most 256 characters, which holds for every FF3Cipher. Inputs that are
+ * not in the alphabet or are longer than MAX_LENGTH are simply not cached.
+ */
+public final class OffHeapTokenCache implements TokenCache {
+
+    /**
+     * Create an empty cache
+     * @param alphabet     the cipher alphabet
+     * @param capacity     the maximum number of entries for each message length
+     */
+    public OffHeapTokenCache(String alphabet, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (alphabet.length() > 256) {
+            throw new IllegalArgumentException("alphabet must have at most 256 characters");
+        }
+        this.alphabet = alphabet;
+        this.alphabetIndex = new AlphabetIndex(alphabet);
+        this.buckets = (capacity + WAYS - 1) / WAYS;
+        for (int j = 0; j < LOCKS; j++) {
+            this.locks[j] = new Object();
+        }
+    }
+
+    @Override
+    public String get(Tweak tweak, String input) {
+        int n = input.length();
+        Slab slab = (n <= MAX_LENGTH) ? this.slabs.get(n) : null;
+        if (slab == null) {
+            return null;
+        }
+        int hash = hash(tweak, input);
+        if (hash == INVALID) {
+            return null;
+        }
+        int bucket = Math.floorMod(hash, this.buckets);
+        synchronized (this.locks[bucket & (LOCKS - 1)]) {
+            int slot = slab.find(bucket, tweak, input, this.alphabetIndex);
+            if (slot < 0) {
+                return null;
+            }
+            slab.reference(slot);
+            return slab.output(slot, this.alphabet);
+        }
+    }
+
+    @Override
+    public void put(Tweak tweak, String input, String output) {
+        int n = input.length();
+        if (n > MAX_LENGTH || output.length() != n) {
+            return;
+        }
+        int hash = hash(tweak, input);
+        if (hash == INVALID) {
+            return;
+        }
+        Slab slab = slab(n);
+        int bucket = Math.floorMod(hash, this.buckets);
+        synchronized (this.locks[bucket & (LOCKS - 1)]) {
+            int slot = slab.find(bucket, tweak, input, this.alphabetIndex);
+            if (slot < 0) {
+                slot = slab.free(bucket);
+                if (slot >= 0) {
+                    this.size.incrementAndGet();
+                } else {
+                    slot = slab.evict(bucket);
+                }
+            }
+            if (!slab.write(slot, tweak, input, output, this.alphabetIndex)) {
+                // output is not in the alphabet, leave the slot empty
+                slab.clear(slot);
+                this.size.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public long size() {
+        return this.size.get();
+    }
+
+    /**
+     * @return             the bytes allocated outside the heap so far
+     */
+    public long offHeapBytes() {
+        long bytes = 0;
+        for (int n = 0; n <= MAX_LENGTH; n++) {
+            Slab slab = this.slabs.get(n);
+            if (slab != null) {
+                bytes += slab.buffer.capacity();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Return the slab for a message length, allocating it on first use
+     */
+    private Slab slab(int n) {
+        Slab slab = this.slabs.get(n);
+        if (slab == null) {
+            synchronized (this.slabs) {
+                slab = this.slabs.get(n);
+                if (slab == null) {
+                    slab = new Slab(n, this.buckets);
+                    this.slabs.set(n, slab);
+                }
+            }
+        }
+        return slab;
+    }
+
+    /**
+     * Hash the tweak and the numerals of the input
+     * @return             the hash, or INVALID if a character is not in the alphabet
+     */
+    private int hash(Tweak tweak, String input) {
+        long h = tweak.bits() * 0x9E3779B97F4A7C15L;
+        for (int j = 0; j < input.length(); j++) {
+            int numeral = this.alphabetIndex.indexOf(input.charAt(j));
+            if (numeral < 0) {
+                return INVALID;
+            }
+            h = (h + numeral) * 0x9E3779B97F4A7C15L;
+        }
+        int hash = (int) (h ^ (h >>> 32));
+        return (hash == INVALID) ? 0 : hash;
+    }
+
+    /**
+     * The entries of one message length n, each STATE, TWEAK, n input numerals and n output numerals
+     */
+    private static final class Slab {
+
+        Slab(int n, int buckets) {
+            long bytes = (long) buckets * WAYS * (HEADER + 2 * n);
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(String.format("a slab of %d bytes is too large", bytes));
+            }
+            this.n = n;
+            this.entrySize = HEADER + 2 * n;
+            this.buffer = ByteBuffer.allocateDirect((int) bytes);
+            this.hands = new byte[buckets];
+        }
+
+        /**
+         * @return             the slot in the bucket holding (tweak, input), or -1
+         */
+        int find(int bucket, Tweak tweak, String input, AlphabetIndex alphabetIndex) {
+            byte kind = kind(tweak);
+            long bits = tweak.bits();
+            for (int slot = bucket * WAYS; slot < (bucket + 1) * WAYS; slot++) {
+                int off = slot * this.entrySize;
+                if ((this.buffer.get(off) & KIND_MASK) != kind || this.buffer.getLong(off + 1) != bits) {
+                    continue;
+                }
+                int j = 0;
+                while (j < this.n && this.buffer.get(off + HEADER + j) == (byte) alphabetIndex.indexOf(input.charAt(j))) {
+                    j++;
+                }
+                if (j == this.n) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return             an empty slot in the bucket, or -1
+         */
+        int free(int bucket) {
+            for (int slot = bucket * WAYS; slot < (bucket + 1) * WAYS; slot++) {
+                if (this.buffer.get(slot * this.entrySize) == 0) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Advance the bucket's clock hand past referenced entries, clearing their bits
+         * @return             the slot to replace
+         */
+        int evict(int bucket) {
+            int hand = this.hands[bucket];
+            while (true) {
+                int off = (bucket * WAYS + hand) * this.entrySize;
+                byte state = this.buffer.get(off);
+                if ((state & REFERENCED) == 0) {
+                    this.hands[bucket] = (byte) ((hand + 1) % WAYS);
+                    return bucket * WAYS + hand;
+                }
+                this.buffer.put(off, (byte) (state & ~REFERENCED));
+                hand = (hand + 1) % WAYS;
+            }
+        }
+
+        void reference(int slot) {
+            int off = slot * this.entrySize;
+            this.buffer.put(off, (byte) (this.buffer.get(off) | REFERENCED));
+        }
+
+        /**
+         * Write an entry
+         * @return             false if the output has a character that is not in the alphabet
+         */
+        boolean write(int slot, Tweak tweak, String input, String output, AlphabetIndex alphabetIndex) {
+            int off = slot * this.entrySize;
+            this.buffer.putLong(off + 1, tweak.bits());
+            for (int j = 0; j < this.n; j++) {
+                int numeral = alphabetIndex.indexOf(output.charAt(j));
+                if (numeral < 0) {
+                    return false;
+                }
+                this.buffer.put(off + HEADER + j, (byte) alphabetIndex.indexOf(input.charAt(j)));
+                this.buffer.put(off + HEADER + this.n + j, (byte) numeral);
+            }
+            this.buffer.put(off, kind(tweak));
+            return true;
+        }
+
+        void clear(int slot) {
+            this.buffer.put(slot * this.entrySize, (byte) 0);
+        }
+
+        String output(int slot, String alphabet) {
+            int off = slot * this.entrySize + HEADER + this.n;
+            char[] x = new char[this.n];
+            for (int j = 0; j < this.n; j++) {
+                x[j] = alphabet.charAt(this.buffer.get(off + j) & 0xFF);
+            }
+            return new String(x);
+        }
+
+        private static byte kind(Tweak tweak) {
+            return tweak.isFF3_1() ? USED_FF3_1 : USED_FF3;
+        }
+
+        private final int n;
+        private final int entrySize;
+        private final ByteBuffer buffer;
+        private final byte[] hands;         // the clock hand of each bucket
+    }
+
+    /** the number of slots probed for each key */
+    static final int WAYS = 8;
+
+    /** the longest message that is cached, the maximum FF3 length for radix 2 */
+    public static final int MAX_LENGTH = 192;
+
+    // Entry state bits
+    private static final byte USED_FF3 = 1;
+    private static final byte USED_FF3_1 = 2;
+    private static final byte KIND_MASK = USED_FF3 | USED_FF3_1;
+    private static final byte REFERENCED = 4;
+    private static final int HEADER = 1 + 8;
+
+    private static final int INVALID = Integer.MIN_VALUE;
+    private static final int LOCKS = 64;
+
+    private final String alphabet;
+    private final AlphabetIndex alphabetIndex;
+    private final int buckets;
+    private final AtomicReferenceArray<Slab> slabs = new AtomicReferenceArray<>(MAX_LENGTH + 1);
+    private final AtomicLong size = new AtomicLong();
+    private final Object[] locks = new Object[LOCKS];
+}
@@ -0,0 +1,200 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The complete FF3 permutation of one message length and tweak, held as forward and inverse
+ * lookup tables so that encrypt and decrypt are array reads. Intended for tiny domains such as
+ * 6 or 7 digit codes, where radix^length is a few million values.
+ *
+ * Tables are created with FF3Cipher.permutationTable, are immutable and thread-safe.
+ */
+public final class PermutationTable {
+
+    private PermutationTable(String alphabet, AlphabetIndex alphabetIndex, int length, int[] forward, int[] inverse) {
+        this.alphabet = alphabet;
+        this.alphabetIndex = alphabetIndex;
+        this.radix = alphabet.length();
+        this.length = length;
+        this.forward = forward;
+        this.inverse = inverse;
+    }
+
+    /**
+     * Encrypt every value of the domain in parallel on the common fork-join pool
+     * @param cipher       the cipher
+     * @param alphabet     the cipher alphabet
+     * @param alphabetIndex the cipher's character lookup
+     * @param length       the message length
+     * @param size         radix^length, the number of values
+     * @param tweak        the tweak
+     * @return             the table
+     */
+    static PermutationTable build(FF3Cipher cipher, String alphabet, AlphabetIndex alphabetIndex, int length, int size,
+                                  Tweak tweak) {
+        int[] forward = new int[size];
+        int[] inverse = new int[size];
+        ForkJoinPool.commonPool().invoke(new Build(cipher, length, tweak, forward, inverse, 0, size));
+        return new PermutationTable(alphabet, alphabetIndex, length, forward, inverse);
+    }
+
+    /**
+     * Encrypts a range of values, splitting it until it is small enough for one task
+     */
+    private static final class Build extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        Build(FF3Cipher cipher, int length, Tweak tweak, int[] forward, int[] inverse, int from, int to) {
+            this.cipher = cipher;
+            this.length = length;
+            this.tweak = tweak;
+            this.forward = forward;
+            this.inverse = inverse;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > THRESHOLD) {
+                int mid = (this.from + this.to) >>> 1;
+                invokeAll(new Build(this.cipher, this.length, this.tweak, this.forward, this.inverse, this.from, mid),
+                        new Build(this.cipher, this.length, this.tweak, this.forward, this.inverse, mid, this.to));
+                return;
+            }
+            try {
+                this.cipher.encryptRange(this.from, this.to - this.from, this.length, this.tweak, this.forward);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            // FF3 is a permutation, so every task writes distinct inverse entries
+            for (int p = this.from; p < this.to; p++) {
+                this.inverse[this.forward[p]] = p;
+            }
+        }
+
+        private static final int THRESHOLD = 1 << 14;
+
+        private final FF3Cipher cipher;
+        private final int length;
+        private final Tweak tweak;
+        private final int[] forward;
+        private final int[] inverse;
+        private final int from;
+        private final int to;
+    }
+
+    /**
+     * Encrypt a value given as a number, the numerals of its fixed-width representation
+     * @param plaintext    a number in [0, size())
+     * @return             the ciphertext as a number in [0, size())
+     */
+    public int encrypt(int plaintext) {
+        return this.forward[plaintext];
+    }
+
+    /**
+     * Decrypt a value given as a number, the numerals of its fixed-width representation
+     * @param ciphertext   a number in [0, size())
+     * @return             the plaintext as a number in [0, size())
+     */
+    public int decrypt(int ciphertext) {
+        return this.inverse[ciphertext];
+    }
+
+    /**
+     * Encrypt a value
+     * @param plaintext    a plaintext of length() characters in the cipher alphabet
+     * @return             the ciphertext
+     */
+    public String encrypt(String plaintext) {
+        return toString(this.forward[toValue(plaintext)]);
+    }
+
+    /**
+     * Decrypt a value
+     * @param ciphertext   a ciphertext of length() characters in the cipher alphabet
+     * @return             the plaintext
+     */
+    public String decrypt(String ciphertext) {
+        return toString(this.inverse[toValue(ciphertext)]);
+    }
+
+    /**
+     * @return             the message length of this table
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * @return             the number of values in the domain, radix^length
+     */
+    public int size() {
+        return this.forward.length;
+    }
+
+    /**
+     * The memory needed for the tables of a domain
+     * @param size         the number of values in the domain
+     * @return             the size of the forward and inverse tables in bytes
+     */
+    static long bytes(long size) {
+        return 2 * Integer.BYTES * size;
+    }
+
+    private int toValue(String str) {
+        if (str.length() != this.length) {
+            throw new IllegalArgumentException(String.format("message length %d is not the table length %d",
+                    str.length(), this.length));
+        }
+        int value = 0;
+        for (int j = 0; j < this.length; j++) {
+            int numeral = this.alphabetIndex.indexOf(str.charAt(j));
+            if (numeral < 0) {
+                throw new IllegalArgumentException(String.format("character at position %d is not in the alphabet", j));
+            }
+            value = value * this.radix + numeral;
+        }
+        return value;
+    }
+
+    private String toString(int value) {
+        char[] x = new char[this.length];
+        for (int j = this.length - 1; j >= 0; j--) {
+            x[j] = this.alphabet.charAt(value % this.radix);
+            value /= this.radix;
+        }
+        return new String(x);
+    }
+
+    /** the default limit on the memory of a table, enough for radix 10 length 7 */
+    public static final long DEFAULT_MAX_BYTES = 128L << 20;
+
+    private final String alphabet;
+    private final AlphabetIndex alphabetIndex;
+    private final int radix;
+    private final int length;
+    private final int[] forward;
+    private final int[] inverse;
+}
@@ -0,0 +1,190 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
+
+/**
+ * The working state of one FF3Cipher call: the AES instance, and reusable buffers for the numerals,
+ * the round function and the engines so that encrypting allocates nothing but the result. Contexts
+ * are borrowed from the cipher's ContextPool, so a context is used by one thread at a time.
+ *
+ * FF3 encrypts REVB(P) and reverses the output S. Writing P in reverse means the AES input is
+ * NUM(REV(B)) as 12 little-endian bytes followed by W XOR i as 4 little-endian bytes, and y is
+ * the AES output read as a little-endian 128-bit number, so no bytes are ever reversed.
+ */
+final class RoundContext {
+
+    RoundContext(Cipher aes, int maxLen) {
+        this.aes = aes;
+        this.numerals = new int[maxLen];
+        this.chars = new char[maxLen];
+    }
+
+    /**
+     * The FF3 round function, y = NUM(REVB(AES(REVB(P)))), leaving y in yHi and yLo
+     * @param prefix       W XOR i as a big-endian int, see Tweak.roundPrefix
+     * @param bHi          the high word of NUM(REV(B)), less than 2^32
+     * @param bLo          the low word of NUM(REV(B))
+     * @throws BadPaddingException internal error
+     * @throws IllegalBlockSizeException internal error
+     */
+    void round(int prefix, long bHi, long bLo) throws BadPaddingException, IllegalBlockSizeException {
+        putLong(this.block, 0, bLo);
+        putInt(this.block, 8, (int) bHi);
+        putInt(this.block, 12, prefix);
+        try {
+            this.aes.doFinal(this.block, 0, BLOCK_SIZE, this.out, 0);
+        } catch (ShortBufferException e) {
+            // the output buffer is always one block
+            throw new IllegalStateException(e);
+        }
+        this.yLo = getLong(this.out, 0);
+        this.yHi = getLong(this.out, 8);
+    }
+
+    /**
+     * The batch buffers of this context, created on first use
+     * @return             the batch
+     */
+    Batch batch() {
+        if (this.batch == null) {
+            this.batch = new Batch(this.aes, this.numerals.length);
+        }
+        return this.batch;
+    }
+
+    /**
+     * Buffers for running the Feistel rounds of up to SIZE records together, so that each round
+     * is a single AES call over a contiguous buffer of blocks rather than one call per record.
+     * Halves are held as (hi, lo) pairs in parallel arrays, with hi = 0 for the 64-bit engine.
+     */
+    static final class Batch {
+
+        Batch(Cipher aes, int maxLen) {
+            this.aes = aes;
+            this.start = new int[maxLen + 2];
+        }
+
+        /**
+         * The FF3 round function for the first n records, y[k] = NUM(REVB(AES(REVB(P[k])))), leaving
+         * each y in yHi[k] and yLo[k]
+         * @param prefix       W XOR i as a big-endian int, the same for every record
+         * @param hi           the high words of NUM(REV(B)), each less than 2^32
+         * @param lo           the low words of NUM(REV(B))
+         * @param n            the number of records
+         * @throws BadPaddingException internal error
+         * @throws IllegalBlockSizeException internal error
+         */
+        void round(int prefix, long[] hi, long[] lo, int n) throws BadPaddingException, IllegalBlockSizeException {
+            for (int k = 0, off = 0; k < n; k++, off += BLOCK_SIZE) {
+                putLong(this.block, off, lo[k]);
+                putInt(this.block, off + 8, (int) hi[k]);
+                putInt(this.block, off + 12, prefix);
+            }
+            try {
+                this.aes.doFinal(this.block, 0, n * BLOCK_SIZE, this.out, 0);
+            } catch (ShortBufferException e) {
+                // the output buffer always holds SIZE blocks
+                throw new IllegalStateException(e);
+            }
+            for (int k = 0, off = 0; k < n; k++, off += BLOCK_SIZE) {
+                this.yLo[k] = getLong(this.out, off);
+                this.yHi[k] = getLong(this.out, off + 8);
+            }
+        }
+
+        /** the number of records per AES call, 4 KiB of blocks */
+        static final int SIZE = 256;
+
+        /** the number of values sorted by length at a time in a bulk call */
+        static final int CHUNK = 1024;
+
+        private final Cipher aes;
+        private final byte[] block = new byte[SIZE * BLOCK_SIZE];
+        private final byte[] out = new byte[SIZE * BLOCK_SIZE];
+
+        /** the numerals, domain and input position of each record, numeral arrays are created on first use */
+        final int[][] numerals = new int[SIZE][];
+        final Domain[] domains = new Domain[SIZE];
+        final int[] index = new int[SIZE];
+
+        /** the halves A and B, and y from the last round */
+        final long[] aHi = new long[SIZE];
+        final long[] aLo = new long[SIZE];
+        final long[] bHi = new long[SIZE];
+        final long[] bLo = new long[SIZE];
+        final long[] yHi = new long[SIZE];
+        final long[] yLo = new long[SIZE];
+
+        /** (hi, lo) registers for the 128-bit arithmetic of one record */
+        final long[] x = new long[2];
+        final long[] y = new long[2];
+
+        /** the counting sort of a chunk: bucket starts by length, the length of each value, and the sorted positions */
+        final int[] start;
+        final int[] lengths = new int[CHUNK];
+        final int[] order = new int[CHUNK];
+    }
+
+    private static void putLong(byte[] b, int off, long x) {
+        for (int j = off; j < off + 8; j++) {
+            b[j] = (byte) x;
+            x >>>= 8;
+        }
+    }
+
+    private static void putInt(byte[] b, int off, int x) {
+        for (int j = off; j < off + 4; j++) {
+            b[j] = (byte) x;
+            x >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] b, int off) {
+        long x = 0;
+        for (int j = off + 7; j >= off; j--) {
+            x = (x << 8) | (b[j] & 0xFF);
+        }
+        return x;
+    }
+
+    private static final int BLOCK_SIZE = 16;
+
+    final Cipher aes;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] out = new byte[BLOCK_SIZE];
+
+    /** the numerals of the message being encrypted, and scratch for converting them back to a string */
+    final int[] numerals;
+    final char[] chars;
+
+    /** y = NUM(S) from the last round */
+    long yHi;
+    long yLo;
+
+    /** (hi, lo) registers for the wide engine */
+    final long[] a = new long[2];
+    final long[] b = new long[2];
+    final long[] y = new long[2];
+
+    private Batch batch;
+}
@@ -0,0 +1,47 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * A bounded map from (tweak, input) to the output of one direction of an FF3Cipher, used by
+ * CachingFF3Cipher. Implementations must be safe for concurrent use. A cache holds the results of
+ * a single key and must not be shared between ciphers.
+ */
+public interface TokenCache {
+
+    /**
+     * Look up a cached result
+     * @param tweak        the tweak
+     * @param input        the plaintext or ciphertext
+     * @return             the cached output, or null if it is not cached
+     */
+    String get(Tweak tweak, String input);
+
+    /**
+     * Cache a result, evicting another entry if the cache is full
+     * @param tweak        the tweak
+     * @param input        the plaintext or ciphertext
+     * @param output       the result of encrypting or decrypting input
+     */
+    void put(Tweak tweak, String input, String output);
+
+    /**
+     * @return             the number of cached entries
+     */
+    long size();
+}
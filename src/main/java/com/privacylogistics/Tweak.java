@@ -0,0 +1,142 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Class Tweak is an immutable, pre-parsed FF3 (64-bit) or FF3-1 (56-bit) tweak.
+ *
+ * Parse a tweak once, e.g. per database column or tenant, and pass it to
+ * FF3Cipher.encrypt(String, Tweak) and decrypt(String, Tweak) on each call. The FF3-1
+ * expansion and the tweak half XOR round number for each of the 8 rounds are computed
+ * when the tweak is created.
+ */
+public final class Tweak {
+
+    private Tweak(byte[] tweak) {
+        if ((tweak.length != TWEAK_LEN) && (tweak.length != TWEAK_LEN_NEW)) {
+            throw new IllegalArgumentException(String.format("tweak length %d is invalid: tweak must be 56 or 64 bits",
+                    tweak.length));
+        }
+        this.tweak = tweak;
+        long bits = 0;
+        for (byte b : tweak) {
+            bits = (bits << 8) | (b & 0xFF);
+        }
+        this.bits = bits;
+
+        // Even rounds use the right half Tr, odd rounds the left half Tl
+        byte[] tweak64 = isFF3_1() ? FF3Cipher.calculateTweak64_FF3_1(tweak) : tweak;
+        byte[] Tl = Arrays.copyOf(tweak64, HALF_TWEAK_LEN);
+        byte[] Tr = Arrays.copyOfRange(tweak64, HALF_TWEAK_LEN, TWEAK_LEN);
+        this.roundPrefix = new int[NUM_ROUNDS];
+        for (int i = 0; i < NUM_ROUNDS; i++) {
+            this.roundPrefix[i] = FF3Cipher.roundPrefix(i, (i % 2 == 0) ? Tr : Tl);
+        }
+    }
+
+    /**
+     * Parse a tweak from hexadecimal
+     * @param hex          16 hex digits for FF3 or 14 hex digits for FF3-1
+     * @return             the tweak
+     */
+    public static Tweak of(String hex) {
+        return new Tweak(FF3Cipher.hexStringToByteArray(hex));
+    }
+
+    /**
+     * Create a tweak from bytes
+     * @param tweak        8 bytes for FF3 or 7 bytes for FF3-1, the array is copied
+     * @return             the tweak
+     */
+    public static Tweak of(byte[] tweak) {
+        return new Tweak(tweak.clone());
+    }
+
+    /**
+     * Create a 64-bit FF3 tweak from a long
+     * @param tweak        the tweak, most significant byte first
+     * @return             the tweak
+     */
+    public static Tweak of(long tweak) {
+        byte[] b = new byte[TWEAK_LEN];
+        for (int j = TWEAK_LEN - 1; j >= 0; j--) {
+            b[j] = (byte) tweak;
+            tweak >>>= 8;
+        }
+        return new Tweak(b);
+    }
+
+    /**
+     * @return             a copy of the tweak bytes
+     */
+    public byte[] toByteArray() {
+        return this.tweak.clone();
+    }
+
+    /**
+     * @return             true for a 56-bit FF3-1 tweak, false for a 64-bit FF3 tweak
+     */
+    public boolean isFF3_1() {
+        return this.tweak.length == TWEAK_LEN_NEW;
+    }
+
+    /**
+     * The first 4 bytes of P in round i, the tweak half W XOR i as a big-endian int
+     * @param i            the round number, 0 to 7
+     * @return             the prefix of P
+     */
+    int roundPrefix(int i) {
+        return this.roundPrefix[i];
+    }
+
+    /**
+     * @return             the tweak bytes as a big-endian number, use with isFF3_1 to tell the lengths apart
+     */
+    long bits() {
+        return this.bits;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof Tweak) && Arrays.equals(this.tweak, ((Tweak) o).tweak);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.tweak);
+    }
+
+    /**
+     * @return             the tweak in hexadecimal
+     */
+    @Override
+    public String toString() {
+        return FF3Cipher.byteArrayToHexString(this.tweak);
+    }
+
+    static final int TWEAK_LEN =    8;       // Original FF3 64-bit tweak length
+    static final int TWEAK_LEN_NEW =  7;     // FF3-1 56-bit tweak length
+    private static final int HALF_TWEAK_LEN = TWEAK_LEN/2;
+    private static final int NUM_ROUNDS = 8;
+
+    private final byte[] tweak;
+    private final long bits;
+    private final int[] roundPrefix;
+}
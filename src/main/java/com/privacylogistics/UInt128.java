@@ -0,0 +1,258 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * Unsigned 128-bit arithmetic on (hi, lo) pairs of longs, used by the primitive Feistel engines.
+ * Only Java 8 APIs are used, and none of these methods allocate.
+ */
+final class UInt128 {
+
+    private UInt128() {
+    }
+
+    /**
+     * Unsigned division by a positive divisor
+     * @param n          the dividend, treated as unsigned
+     * @param d          the divisor, must be positive
+     * @return           the unsigned quotient
+     */
+    static long divideUnsigned(long n, long d) {
+        if (n >= 0) {
+            return n / d;
+        }
+        // Long.divideUnsigned falls back to BigInteger on Java 8 for negative dividends
+        long q = ((n >>> 1) / d) << 1;
+        long r = n - q * d;
+        return (Long.compareUnsigned(r, d) >= 0) ? q + 1 : q;
+    }
+
+    /**
+     * Unsigned remainder by a positive divisor
+     * @param n          the dividend, treated as unsigned
+     * @param d          the divisor, must be positive
+     * @return           the unsigned remainder
+     */
+    static long remainderUnsigned(long n, long d) {
+        if (n >= 0) {
+            return n % d;
+        }
+        long q = ((n >>> 1) / d) << 1;
+        long r = n - q * d;
+        return (Long.compareUnsigned(r, d) >= 0) ? r - d : r;
+    }
+
+    /**
+     * Calculate (hi * 2^64 + lo) mod m for a positive 64-bit modulus
+     * @param hi         the high word of the dividend, treated as unsigned
+     * @param lo         the low word of the dividend, treated as unsigned
+     * @param m          the modulus, must be positive
+     * @return           the remainder in [0, m)
+     */
+    static long remainder(long hi, long lo, long m) {
+        // Reduce the high word first, this leaves the remainder unchanged
+        hi = remainderUnsigned(hi, m);
+        if (hi == 0) {
+            return remainderUnsigned(lo, m);
+        }
+        // The remainder is below 2^63, so only the low word of x - q*m is needed
+        return lo - divide(hi, lo, m) * m;
+    }
+
+    /**
+     * Calculate floor((hi * 2^64 + lo) / m) for a positive 64-bit divisor, following the
+     * two-digit long division of Hacker's Delight (divlu) on 32-bit half words
+     * @param hi         the high word of the dividend, must be less than m
+     * @param lo         the low word of the dividend, treated as unsigned
+     * @param m          the divisor, must be positive
+     * @return           the quotient, which fits in 64 bits since hi &lt; m
+     */
+    static long divide(long hi, long lo, long m) {
+        if (hi == 0) {
+            return divideUnsigned(lo, m);
+        }
+
+        // Normalize the divisor so its top bit is set, m is positive so s >= 1
+        int s = Long.numberOfLeadingZeros(m);
+        long v = m << s;
+        long vn1 = v >>> 32;
+        long vn0 = v & MASK32;
+
+        long un32 = (hi << s) | (lo >>> (64 - s));
+        long un10 = lo << s;
+        long un1 = un10 >>> 32;
+        long un0 = un10 & MASK32;
+
+        // First quotient digit, at most two corrections are needed
+        long q1 = divideUnsigned(un32, vn1);
+        long rhat = un32 - q1 * vn1;
+        while (q1 > MASK32 || Long.compareUnsigned(q1 * vn0, (rhat << 32) | un1) > 0) {
+            q1--;
+            rhat += vn1;
+            if (rhat > MASK32) {
+                break;
+            }
+        }
+        long un21 = ((un32 << 32) | un1) - q1 * v;
+
+        // Second quotient digit
+        long q0 = divideUnsigned(un21, vn1);
+        rhat = un21 - q0 * vn1;
+        while (q0 > MASK32 || Long.compareUnsigned(q0 * vn0, (rhat << 32) | un0) > 0) {
+            q0--;
+            rhat += vn1;
+            if (rhat > MASK32) {
+                break;
+            }
+        }
+        return (q1 << 32) | q0;
+    }
+
+    /**
+     * The high 64 bits of the unsigned 128-bit product x * y, as Math.unsignedMultiplyHigh
+     * in Java 18, computed from 32-bit partial products (Hacker's Delight mulhu)
+     * @param x          a factor, treated as unsigned
+     * @param y          a factor, treated as unsigned
+     * @return           the high word of the product
+     */
+    static long multiplyHigh(long x, long y) {
+        long x0 = x & MASK32, x1 = x >>> 32;
+        long y0 = y & MASK32, y1 = y >>> 32;
+        long w0 = x0 * y0;
+        long t = x1 * y0 + (w0 >>> 32);
+        long w1 = (t & MASK32) + x0 * y1;
+        return x1 * y1 + (t >>> 32) + (w1 >>> 32);
+    }
+
+    /**
+     * Convert an unsigned 128-bit value to the nearest double
+     * @param hi         the high word, treated as unsigned
+     * @param lo         the low word, treated as unsigned
+     * @return           an approximation of hi * 2^64 + lo
+     */
+    static double toDouble(long hi, long lo) {
+        return unsignedToDouble(hi) * 0x1p64 + unsignedToDouble(lo);
+    }
+
+    private static double unsignedToDouble(long x) {
+        return (x >= 0) ? (double) x : (double) ((x >>> 1) | (x & 1)) * 2.0;
+    }
+
+    /**
+     * Calculate radix^exponent as a 128-bit value
+     * @param radix      the base
+     * @param exponent   the exponent, radix^exponent must be less than 2^128
+     * @return           {hi, lo}
+     */
+    static long[] pow(int radix, int exponent) {
+        long hi = 0, lo = 1;
+        for (int j = 0; j < exponent; j++) {
+            hi = hi * radix + multiplyHigh(lo, radix);
+            lo = lo * radix;
+        }
+        return new long[] {hi, lo};
+    }
+
+    /**
+     * Reduce x = {hi, lo} in place modulo m, where m &lt;= 2^96
+     * @param x          a 128-bit value {hi, lo}, replaced by x mod m
+     * @param mHi        the high word of the modulus
+     * @param mLo        the low word of the modulus
+     * @param mDouble    the modulus as a double, see toDouble
+     */
+    static void remainder(long[] x, long mHi, long mLo, double mDouble) {
+        if (mHi == 0 && mLo > 0) {
+            x[1] = remainder(x[0], x[1], mLo);
+            x[0] = 0;
+            return;
+        }
+
+        // Long division by m in two steps, so each quotient is small enough to estimate from
+        // doubles: first the top 96 bits of x (quotient < 2^33 as m >= 2^63), then the
+        // remainder shifted left with the last 32 bits of x appended (quotient < 2^32)
+        long low32 = x[1] & MASK32;
+        x[1] = (x[0] << 32) | (x[1] >>> 32);
+        x[0] = x[0] >>> 32;
+        reduce(x, mHi, mLo, mDouble);
+
+        x[0] = (x[0] << 32) | (x[1] >>> 32);
+        x[1] = (x[1] << 32) | low32;
+        reduce(x, mHi, mLo, mDouble);
+    }
+
+    /**
+     * Reduce x in place modulo m, when the quotient x / m is less than 2^34
+     */
+    private static void reduce(long[] x, long mHi, long mLo, double mDouble) {
+        long hi = x[0], lo = x[1];
+
+        // The relative error of the double estimate is ~2^-52, so q is off by at most one
+        long q = (long) (toDouble(hi, lo) / mDouble);
+        long pLo = q * mLo;
+        long pHi = multiplyHigh(q, mLo) + q * mHi;
+        long rLo = lo - pLo;
+        long rHi = hi - pHi - (Long.compareUnsigned(lo, pLo) < 0 ? 1 : 0);
+
+        while (rHi < 0) {
+            rLo += mLo;
+            rHi += mHi + (Long.compareUnsigned(rLo, mLo) < 0 ? 1 : 0);
+        }
+        while (rHi > mHi || (rHi == mHi && Long.compareUnsigned(rLo, mLo) >= 0)) {
+            rHi -= mHi + (Long.compareUnsigned(rLo, mLo) < 0 ? 1 : 0);
+            rLo -= mLo;
+        }
+        x[0] = rHi;
+        x[1] = rLo;
+    }
+
+    /**
+     * x = (x + y) mod m, for x, y &lt; m &lt;= 2^96
+     * @param x          a 128-bit value {hi, lo}, replaced by the sum
+     * @param y          a 128-bit value {hi, lo}
+     * @param m          the modulus {hi, lo}
+     */
+    static void addMod(long[] x, long[] y, long[] m) {
+        long lo = x[1] + y[1];
+        long hi = x[0] + y[0] + (Long.compareUnsigned(lo, y[1]) < 0 ? 1 : 0);
+        if (hi > m[0] || (hi == m[0] && Long.compareUnsigned(lo, m[1]) >= 0)) {
+            hi -= m[0] + (Long.compareUnsigned(lo, m[1]) < 0 ? 1 : 0);
+            lo -= m[1];
+        }
+        x[0] = hi;
+        x[1] = lo;
+    }
+
+    /**
+     * x = (x - y) mod m, for x, y &lt; m &lt;= 2^96
+     * @param x          a 128-bit value {hi, lo}, replaced by the difference
+     * @param y          a 128-bit value {hi, lo}
+     * @param m          the modulus {hi, lo}
+     */
+    static void subtractMod(long[] x, long[] y, long[] m) {
+        long lo = x[1] - y[1];
+        long hi = x[0] - y[0] - (Long.compareUnsigned(x[1], y[1]) < 0 ? 1 : 0);
+        if (hi < 0) {
+            lo += m[1];
+            hi += m[0] + (Long.compareUnsigned(lo, m[1]) < 0 ? 1 : 0);
+        }
+        x[0] = hi;
+        x[1] = lo;
+    }
+
+    private static final long MASK32 = 0xFFFFFFFFL;
+}
@@ -0,0 +1,63 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AlphabetIndexTest {
+
+    static void assertIndex(String alphabet) {
+        AlphabetIndex index = new AlphabetIndex(alphabet);
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            assertEquals(alphabet.indexOf((char) c), index.indexOf((char) c));
+        }
+    }
+
+    @Test
+    public void testDenseAlphabet() {
+        assertIndex(FF3Cipher.DIGITS);
+        assertIndex(FF3Cipher.alphabetForBase(64));
+        assertIndex("\u0000\u0001\u0002");
+    }
+
+    @Test
+    public void testSparseAlphabet() {
+        // Superscripts and the capital sharp s are beyond the dense table
+        assertIndex("⁰¹²³⁴⁵⁶⁷⁸⁹");
+        assertIndex(FF3Cipher.DIGITS + FF3Cipher.ASCII_LOWERCASE + FF3Cipher.ASCII_UPPERCASE + "ÄäÖöÜüẞß");
+        assertIndex("\u0000￿");
+    }
+
+    @Test
+    public void testByteIndex() {
+        String alphabet = FF3Cipher.DIGITS + "ÿ";
+        AlphabetIndex index = new AlphabetIndex(alphabet);
+        assertTrue(index.isSingleByte());
+        for (int b = 0; b < 256; b++) {
+            assertEquals(alphabet.indexOf((char) b), index.indexOf((byte) b));
+        }
+        assertFalse(new AlphabetIndex("⁰¹²³⁴⁵⁶⁷⁸⁹").isSingleByte());
+    }
+
+    @Test
+    public void testDuplicates() {
+        assertThrows(IllegalArgumentException.class, () -> new AlphabetIndex("0123456780"));
+        assertThrows(IllegalArgumentException.class, () -> new AlphabetIndex("⁰¹²³⁴⁵⁶⁷⁸⁰"));
+    }
+}
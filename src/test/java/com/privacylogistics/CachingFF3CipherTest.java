@@ -0,0 +1,93 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CachingFF3CipherTest {
+
+    static final String KEY = "EF4359D8D580AA4F7F036D6F04FC6A94";
+    static final String TWEAK = "D8E7920AFA330A73";
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        CachingFF3Cipher c = new CachingFF3Cipher(new FF3Cipher(KEY, TWEAK), 100);
+        assertEquals("750918814058654607", c.encrypt("890121234567890000"));
+        assertEquals("750918814058654607", c.encrypt("890121234567890000"));
+        assertEquals(1, c.hits());
+        assertEquals(1, c.misses());
+
+        // encrypting filled the inverse entry
+        assertEquals("890121234567890000", c.decrypt("750918814058654607"));
+        assertEquals(2, c.hits());
+
+        // and decrypting fills the encrypt entry
+        String pt = c.decrypt("123456789");
+        assertEquals("123456789", c.encrypt(pt));
+        assertEquals(3, c.hits());
+        assertEquals(2, c.misses());
+    }
+
+    @Test
+    public void testTweaks() throws Exception {
+        CachingFF3Cipher c = new CachingFF3Cipher(new FF3Cipher(KEY, TWEAK), 100);
+        assertEquals("750918814058654607", c.encrypt("890121234567890000"));
+        assertEquals("018989839189395384", c.encrypt("890121234567890000", Tweak.of("9A768A92F60E12D8")));
+        assertEquals(0, c.hits());
+        assertThrows(IllegalArgumentException.class, () -> {
+            TokenCache shared = new ClockTokenCache(10);
+            new CachingFF3Cipher(c.cipher(), shared, shared);
+        });
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        FF3Cipher cipher = new FF3Cipher(KEY, TWEAK);
+        CachingFF3Cipher c = new CachingFF3Cipher(cipher, 64);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int seed = t;
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < 2000; j++) {
+                        String pt = String.format("%06d", (j * 7 + seed) % 100);
+                        String ct = c.encrypt(pt);
+                        if (!ct.equals(cipher.encrypt(pt)) || !pt.equals(c.decrypt(ct))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(8 * 2000 * 2, c.hits() + c.misses());
+    }
+}
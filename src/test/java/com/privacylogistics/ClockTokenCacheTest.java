@@ -0,0 +1,65 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClockTokenCacheTest {
+
+    static final Tweak TWEAK = Tweak.of("D8E7920AFA330A73");
+
+    @Test
+    public void testGetPut() {
+        ClockTokenCache cache = new ClockTokenCache(10);
+        assertNull(cache.get(TWEAK, "123456"));
+        cache.put(TWEAK, "123456", "654321");
+        assertEquals("654321", cache.get(TWEAK, "123456"));
+        assertNull(cache.get(Tweak.of("9A768A92F60E12D8"), "123456"));
+        cache.put(TWEAK, "123456", "111111");
+        assertEquals("111111", cache.get(TWEAK, "123456"));
+        assertEquals(1, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> new ClockTokenCache(0));
+    }
+
+    @Test
+    public void testBounded() {
+        for (int capacity : new int[] {1, 3, 17, 1000}) {
+            ClockTokenCache cache = new ClockTokenCache(capacity);
+            for (int j = 0; j < 5000; j++) {
+                cache.put(TWEAK, Integer.toString(j), Integer.toString(-j));
+            }
+            assertEquals(capacity, cache.size());
+        }
+    }
+
+    @Test
+    public void testSecondChance() {
+        // Hot entries are referenced between cold insertions, so the clock always evicts a cold one
+        ClockTokenCache cache = new ClockTokenCache(256);
+        for (int j = 0; j < 8; j++) {
+            cache.put(TWEAK, "hot" + j, "h" + j);
+        }
+        for (int j = 0; j < 10000; j++) {
+            cache.put(TWEAK, "cold" + j, "c" + j);
+            for (int k = 0; k < 8; k++) {
+                assertEquals("h" + k, cache.get(TWEAK, "hot" + k));
+            }
+        }
+    }
+}
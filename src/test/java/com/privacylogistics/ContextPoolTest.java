@@ -0,0 +1,88 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ContextPoolTest {
+
+    @Test
+    public void testReuse() {
+        AtomicInteger created = new AtomicInteger();
+        ContextPool pool = new ContextPool(() -> {
+            created.incrementAndGet();
+            return new RoundContext(null, 8);
+        }, 3);
+        assertEquals(4, pool.capacity());
+        assertEquals(1, new ContextPool(() -> null, 1).capacity());
+
+        RoundContext ctx = pool.acquire();
+        pool.release(ctx);
+        assertSame(ctx, pool.acquire());
+        assertEquals(1, created.get());
+
+        // Contexts beyond the capacity are dropped when they are returned
+        List<RoundContext> held = new ArrayList<>();
+        held.add(ctx);
+        for (int j = 0; j < 5; j++) {
+            held.add(pool.acquire());
+        }
+        assertEquals(6, created.get());
+        for (RoundContext c : held) {
+            pool.release(c);
+        }
+        assertEquals(4, pool.idle());
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        ContextPool pool = new ContextPool(() -> new RoundContext(null, 8), 4);
+        Set<RoundContext> inUse = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < 10000; j++) {
+                        RoundContext ctx = pool.acquire();
+                        assertTrue(inUse.add(ctx), "context handed out twice");
+                        inUse.remove(ctx);
+                        pool.release(ctx);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(pool.idle() <= pool.capacity());
+    }
+}
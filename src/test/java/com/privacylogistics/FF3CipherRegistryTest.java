@@ -0,0 +1,163 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FF3CipherRegistryTest {
+
+    static final String TWEAK = "D8E7920AFA330A73";
+
+    static Map<String, String> keys() {
+        Map<String, String> keys = new HashMap<>();
+        keys.put("nist", "EF4359D8D580AA4F7F036D6F04FC6A94");
+        for (int j = 0; j < 10; j++) {
+            keys.put("tenant" + j, String.format("%032X", j + 1));
+        }
+        return keys;
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        FF3CipherRegistry registry = new FF3CipherRegistry(keys()::get, TWEAK, 100);
+        FF3Cipher c = registry.get("nist");
+        assertEquals("750918814058654607", c.encrypt("890121234567890000"));
+        assertSame(c, registry.get("nist"));
+        assertNotSame(c, registry.get("nist", FF3Cipher.DIGITS + FF3Cipher.ASCII_LOWERCASE));
+        assertEquals(1, registry.hits());
+        assertEquals(2, registry.misses());
+        assertEquals(2, registry.constructions());
+        assertTrue(registry.constructionNanos() > 0);
+
+        registry.invalidate("nist");
+        assertEquals(0, registry.size());
+        assertNotSame(c, registry.get("nist"));
+    }
+
+    @Test
+    public void testLruEviction() {
+        FF3CipherRegistry registry = new FF3CipherRegistry(keys()::get, TWEAK, 3);
+        FF3Cipher t0 = registry.get("tenant0");
+        registry.get("tenant1");
+        registry.get("tenant2");
+        registry.get("tenant0");
+        registry.get("tenant3");
+        assertEquals(3, registry.size());
+        assertEquals(1, registry.evictions());
+
+        // tenant1 was the least recently used
+        assertSame(t0, registry.get("tenant0"));
+        long constructions = registry.constructions();
+        registry.get("tenant1");
+        assertEquals(constructions + 1, registry.constructions());
+    }
+
+    @Test
+    public void testConcurrentEviction() throws Exception {
+        FF3CipherRegistry registry = new FF3CipherRegistry(keys()::get, TWEAK, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        String keyId = "tenant" + ((seed + j * j) % 10);
+                        assertNotNull(registry.get(keyId).encrypt("890121234567890000"));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(registry.size() <= 4);
+        assertEquals(8000, registry.hits() + registry.misses());
+        assertEquals(registry.misses(), registry.constructions());
+    }
+
+    @Test
+    public void testFailures() {
+        AtomicInteger loads = new AtomicInteger();
+        FF3CipherRegistry registry = new FF3CipherRegistry(id -> {
+            loads.incrementAndGet();
+            return keys().get(id);
+        }, TWEAK, 10);
+        assertThrows(IllegalArgumentException.class, () -> registry.get("unknown"));
+        assertThrows(IllegalArgumentException.class, () -> registry.get("unknown"));
+        assertEquals(2, loads.get());
+        assertEquals(0, registry.size());
+        assertThrows(IllegalArgumentException.class, () -> registry.get("nist", "0123456780"));
+        assertThrows(IllegalArgumentException.class, () -> new FF3CipherRegistry(keys()::get, "D8E7", 10));
+    }
+
+    @Test
+    public void testFailureDoesNotEvict() {
+        FF3CipherRegistry registry = new FF3CipherRegistry(keys()::get, TWEAK, 1);
+        FF3Cipher c = registry.get("nist");
+        assertThrows(IllegalArgumentException.class, () -> registry.get("missing"));
+        assertEquals(1, registry.size());
+        assertEquals(0, registry.evictions());
+        assertSame(c, registry.get("nist"));
+        assertEquals(1, registry.constructions());
+    }
+
+    @Test
+    public void testSingleConstruction() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        FF3CipherRegistry registry = new FF3CipherRegistry(id -> {
+            try {
+                loading.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return keys().get(id);
+        }, TWEAK, 10);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<FF3Cipher>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> registry.get("nist")));
+            }
+            Thread.sleep(50);
+            loading.countDown();
+            FF3Cipher first = results.get(0).get();
+            for (Future<FF3Cipher> result : results) {
+                assertSame(first, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, registry.constructions());
+    }
+}
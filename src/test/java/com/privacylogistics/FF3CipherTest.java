@@ -22,7 +22,19 @@ import org.junit.jupiter.api.condition.EnabledOnJre;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.condition.JRE;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.privacylogistics.FF3Cipher.reverseString;
 import static com.privacylogistics.FF3Cipher.encode_int_r;
@@ -144,15 +156,296 @@ public class FF3CipherTest {
         byte[] P = FF3Cipher.calculateP(i, alphabet, W, B);
         assertArrayEquals(P, new byte[]
                 {(byte) 250, 51, 10, 115, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, (byte) 129, (byte) 205});
+
+        // NUM(REV(B)) at or above 2^95 has a sign byte in toByteArray, which must not overwrite W XOR i
+        String alphanumeric = FF3Cipher.DIGITS + FF3Cipher.ASCII_LOWERCASE + FF3Cipher.ASCII_UPPERCASE;
+        B = "ZZZZZZZZZZZZZZZZ";
+        P = FF3Cipher.calculateP(3, alphanumeric, W, B);
+        assertEquals((byte) (W[3] ^ 3), P[3]);
+        assertEquals(BigInteger.valueOf(62).pow(16).subtract(BigInteger.ONE), new BigInteger(1, Arrays.copyOfRange(P, 4, 16)));
     }
 
-    /*
-    ToDo: replace this with a value-not-in radix error
-    @Test(expected = NumberFormatException.class)
-    public void testInvalidPlaintext() throws Exception {
+    @Test
+    public void testRoundContext() throws Exception {
+        // The round block is REVB(P) and y is NUM(REVB(S)), so it must match AES applied to the reversed P
+        // of calculateP, for halves of the 64-bit and 128-bit engines and one at or above 2^95
+        byte[] key = FF3Cipher.hexStringToByteArray("EF4359D8D580AA4F7F036D6F04FC6A94");
+        byte[] W = FF3Cipher.hexStringToByteArray("FA330A73");
+        FF3Cipher c = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73");
+        c.reverseBytes(key);
+        Cipher aes = Cipher.getInstance("AES/ECB/NoPadding");
+        aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        RoundContext ctx = new RoundContext(aes, 56);
+
+        String alphanumeric = FF3Cipher.DIGITS + FF3Cipher.ASCII_LOWERCASE + FF3Cipher.ASCII_UPPERCASE;
+        String[][] halves = {
+                {FF3Cipher.DIGITS, "567890000"},
+                {FF3Cipher.DIGITS, "999999999999999999"},
+                {FF3Cipher.DIGITS, "2658354847544284194395037922"},
+                {alphanumeric, "ZZZZZZZZZZZZZZZZ"}};
+        for (int i = 0; i < halves.length; i++) {
+            String alphabet = halves[i][0];
+            String B = halves[i][1];
+            byte[] P = FF3Cipher.calculateP(i, alphabet, W, B);
+            c.reverseBytes(P);
+            byte[] S = aes.doFinal(P);
+            c.reverseBytes(S);
+
+            BigInteger b = decode_int(reverseString(B), alphabet);
+            ctx.round(FF3Cipher.roundPrefix(i, W), b.shiftRight(64).longValue(), b.longValue());
+            BigInteger y = BigInteger.valueOf(ctx.yHi).shiftLeft(64).add(new BigInteger(Long.toUnsignedString(ctx.yLo)));
+            assertEquals(new BigInteger(1, S), y.mod(BigInteger.ONE.shiftLeft(128)));
+        }
+    }
+
+    @Test
+    public void testMaxHalfLength() {
+        BigInteger longMax = BigInteger.valueOf(Long.MAX_VALUE);
+        BigInteger max96 = BigInteger.ONE.shiftLeft(96);
+        assertEquals(18, FF3Cipher.maxHalfLength(10, longMax));
+        assertEquals(62, FF3Cipher.maxHalfLength(2, longMax));
+        assertEquals(7, FF3Cipher.maxHalfLength(256, longMax));
+        assertEquals(28, FF3Cipher.maxHalfLength(10, max96));
+        assertEquals(16, FF3Cipher.maxHalfLength(64, max96));
+    }
+
+    @Test
+    public void testDomain() {
+        // radix 10: halves up to 18 digits use longs, up to 28 digits (maxLen 56) use (hi, lo) pairs
+        Domain d = new Domain(10, 29, 18, 28);
+        assertEquals(15, d.u);
+        assertEquals(14, d.v);
+        assertEquals(Domain.Engine.LONG, d.engine);
+        assertEquals(1000000000000000L, d.modU);
+        assertEquals(100000000000000L, d.modV);
+
+        d = new Domain(10, 37, 18, 28);
+        assertEquals(Domain.Engine.WIDE, d.engine);
+        assertArrayEquals(new long[] {0, 1000000000000000000L}, d.wideModV);
+        assertArrayEquals(new long[] {0, Long.parseUnsignedLong("10000000000000000000")}, d.wideModU);
+
+        // Halves beyond 96 bits are ruled out by maxLen, for every radix
+        assertThrows(IllegalStateException.class, () -> new Domain(10, 58, 18, 28));
+        for (int radix = 2; radix <= 256; radix++) {
+            StringBuilder alphabet = new StringBuilder();
+            for (int j = 0; j < radix; j++) {
+                alphabet.append((char) ('A' + j));
+            }
+            assertNotNull(new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73", alphabet.toString()));
+        }
+    }
+
+    @Test
+    public void testWideRoundTrip() throws Exception {
+        // Alphanumeric lengths beyond the 64-bit engine, up to the radix 62 maximum of 32
+        String alphabet = FF3Cipher.DIGITS + FF3Cipher.ASCII_LOWERCASE + FF3Cipher.ASCII_UPPERCASE;
+        FF3Cipher c = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73", alphabet);
+        String pt = "zZ9aY8bX7cW6dV5eU4fT3gS2hR1iQ0jP";
+        for (int n = 20; n <= pt.length(); n++) {
+            String ciphertext = c.encrypt(pt.substring(0, n));
+            assertEquals(n, ciphertext.length());
+            assertEquals(pt.substring(0, n), c.decrypt(ciphertext));
+        }
+    }
+
+    @Test
+    public void testWideKnownAnswer() throws Exception {
+        // Radix 62 halves of 16 characters can reach 2^95, where earlier versions overwrote a byte of P
+        // and produced S6J99yw4JiKoVqQ5mI075ThkriFGEvVo for the largest value instead
+        String alphabet = FF3Cipher.DIGITS + FF3Cipher.ASCII_LOWERCASE + FF3Cipher.ASCII_UPPERCASE;
+        FF3Cipher c = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73", alphabet);
+        assertEquals("jq1VXGjWLVbVxsVGCHPWLtpPoV7GZ4ij", c.encrypt("ZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZ"));
+        assertEquals("ZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZZ", c.decrypt("jq1VXGjWLVbVxsVGCHPWLtpPoV7GZ4ij"));
+        assertEquals("0ac00xwqjpK8cbjhci7lhJHwzK5Cf8dv", c.encrypt("zZ9aY8bX7cW6dV5eU4fT3gS2hR1iQ0jP"));
+        assertEquals("zZ9aY8bX7cW6dV5eU4fT3gS2hR1iQ0jP", c.decrypt("0ac00xwqjpK8cbjhci7lhJHwzK5Cf8dv"));
+        assertEquals("FzjdQ6QTr5RZVgThL6tICY0g6rG8BU5", c.encrypt("zZ9aY8bX7cW6dV5eU4fT3gS2hR1iQ0j"));
+        assertEquals("Q5jyACd7mn69nPHFtPJtyFTcTAkMMeOs", c.encrypt("0123456789abcdefghijklmnopqrstuv"));
+
+        // Radix 16 at its maximum of 48, earlier versions gave 190bbf524d7fc61077e5887d653c8a636c264c175f7599e8
+        FF3Cipher hex = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73", "0123456789abcdef");
+        String f48 = "ffffffffffffffffffffffffffffffffffffffffffffffff";
+        assertEquals("1f14f5ed4131156d447c37501c053a221f8a91cbe9bda74c", hex.encrypt(f48));
+        assertEquals(f48, hex.decrypt("1f14f5ed4131156d447c37501c053a221f8a91cbe9bda74c"));
+        assertEquals("75569ff5ec0fbb48a0bd5f2ae00541be25de4773bb63792e",
+                hex.encrypt("0123456789abcdeffedcba98765432100123456789abcdef"));
+
+        // Radix 64 at its maximum of 32, earlier versions gave h2X+BgZZI5MtuxURmdcGSoIo47nZnBFz
+        FF3Cipher b64 = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73", alphabet + "+/");
+        assertEquals("N7QnujN4hpdh7fn113REy4fGpMHDrH7N", b64.encrypt("////////////////////////////////"));
+        assertEquals("////////////////////////////////", b64.decrypt("N7QnujN4hpdh7fn113REy4fGpMHDrH7N"));
+        assertEquals("QLEIdA5fhZ//fc3WroKcISU3lt5hldGY", b64.encrypt("0123456789abcdefghijklmnopqrstuv"));
+
+        // Radix 10 at its maximum of 56 stays below 2^95 per half, so it is unchanged from earlier versions
+        FF3Cipher digits = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73");
+        String n56 = "99999999999999999999999999999999999999999999999999999999";
+        assertEquals("14742579132300610768200414623116500674462412253707370232", digits.encrypt(n56));
+        assertEquals(n56, digits.decrypt("14742579132300610768200414623116500674462412253707370232"));
+        assertEquals("76239557710184799016672488626962231166888602835724035798",
+                digits.encrypt("12345678901234567890123456789012345678901234567890123456"));
+    }
+
+    @Test
+    public void testEncryptAll() throws Exception {
+        // Mixed lengths across both engines, spanning more than one batch
+        String alphabet = FF3Cipher.DIGITS + FF3Cipher.ASCII_LOWERCASE + FF3Cipher.ASCII_UPPERCASE;
+        FF3Cipher c = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73", alphabet);
+        String pt = "zZ9aY8bX7cW6dV5eU4fT3gS2hR1iQ0jP";
+        String[] plaintexts = new String[600];
+        for (int k = 0; k < plaintexts.length; k++) {
+            int n = 4 + k % (pt.length() - 3);
+            plaintexts[k] = pt.substring(k % (pt.length() - n + 1)).substring(0, n);
+        }
+        String[] ciphertexts = c.encryptAll(plaintexts);
+        for (int k = 0; k < plaintexts.length; k++) {
+            assertEquals(c.encrypt(plaintexts[k]), ciphertexts[k]);
+        }
+        assertArrayEquals(plaintexts, c.decryptAll(ciphertexts));
+
+        Tweak tweak = Tweak.of("9A768A92F60E12D8");
+        assertArrayEquals(plaintexts, c.decryptAll(c.encryptAll(plaintexts, tweak), tweak));
+        assertEquals(0, c.encryptAll(new String[0]).length);
+        assertThrows(IllegalArgumentException.class, () -> c.encryptAll(new String[] {"1234", "12-4"}));
+    }
+
+    @Test
+    public void testBulkEncrypt() throws Exception {
+        FF3Cipher c = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73");
+        // Spans several chunks of the length sort, with invalid values in the first and last
+        String[] in = new String[2500];
+        for (int k = 0; k < in.length; k++) {
+            in[k] = Long.toString(1000003L * k * k + 123456789L);
+        }
+        in[3] = "12";
+        in[4] = null;
+        in[5] = "12345X789";
+        in[2499] = "1234-6789";
+
+        String[] out = new String[in.length];
+        byte[] status = new byte[in.length];
+        assertEquals(4, c.encrypt(in, out, Tweak.of("9A768A92F60E12D8"), status));
+        assertEquals(FF3Cipher.STATUS_INVALID_LENGTH, status[3]);
+        assertEquals(FF3Cipher.STATUS_NULL, status[4]);
+        assertEquals(FF3Cipher.STATUS_INVALID_CHARACTER, status[5]);
+        assertEquals(FF3Cipher.STATUS_INVALID_CHARACTER, status[2499]);
+        for (int k = 0; k < in.length; k++) {
+            if (status[k] == FF3Cipher.STATUS_OK) {
+                assertEquals(c.encrypt(in[k], Tweak.of("9A768A92F60E12D8")), out[k]);
+            } else {
+                assertNull(out[k]);
+            }
+        }
+
+        String[] back = new String[in.length];
+        assertEquals(4, c.decrypt(out, back, Tweak.of("9A768A92F60E12D8"), null));
+        for (int k = 6; k < in.length - 1; k++) {
+            assertEquals(in[k], back[k]);
+        }
+        assertEquals(0, c.encrypt(new String[] {"890121234567890000"}, out));
+        assertEquals("750918814058654607", out[0]);
+        assertThrows(IllegalArgumentException.class, () -> c.encrypt(in, new String[1]));
+    }
+
+    @Test
+    public void testCharArrayApi() throws Exception {
+        FF3Cipher c = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73");
+        char[] record = "id=890121234567890000;".toCharArray();
+
+        // encrypt the field in place within the record, then decrypt it into another array
+        c.encrypt(record, 3, 18, record, 3);
+        assertEquals("id=750918814058654607;", new String(record));
+        char[] out = new char[20];
+        c.decrypt(CharBuffer.wrap(record, 3, 18), out, 2);
+        assertEquals("890121234567890000", new String(out, 2, 18));
+
+        Tweak tweak = Tweak.of("0000000000000000");
+        out = new char[29];
+        c.encrypt(new StringBuilder("89012123456789000000789000000"), out, 0, tweak);
+        assertEquals("34695224821734535122613701434", new String(out));
+        c.decrypt(out, 0, 29, out, 0, tweak);
+        assertEquals("89012123456789000000789000000", new String(out));
+
+        assertThrows(IndexOutOfBoundsException.class, () -> c.encrypt(record, 10, 18, record, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> c.encrypt("890121234567890000", new char[20], 3));
+        assertThrows(IllegalArgumentException.class, () -> c.encrypt(record, 0, 18, record, 0));
+    }
+
+    @Test
+    public void testByteApi() throws Exception {
+        FF3Cipher c = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73");
+        byte[] record = "id=890121234567890000;".getBytes(StandardCharsets.US_ASCII);
+
+        c.encrypt(record, 3, 18, record, 3);
+        assertEquals("id=750918814058654607;", new String(record, StandardCharsets.US_ASCII));
+        c.decrypt(record, 3, 18, record, 3);
+        assertEquals("id=890121234567890000;", new String(record, StandardCharsets.US_ASCII));
+
+        // heap, sliced and direct buffers are all encrypted between position and limit
+        ByteBuffer heap = ByteBuffer.wrap(record, 3, 18);
+        c.encrypt(heap);
+        assertEquals(21, heap.position());
+        assertEquals("id=750918814058654607;", new String(record, StandardCharsets.US_ASCII));
+        ByteBuffer slice = ByteBuffer.wrap(record);
+        slice.position(3);
+        slice = slice.slice();
+        slice.limit(18);
+        c.decrypt(slice);
+        assertEquals("id=890121234567890000;", new String(record, StandardCharsets.US_ASCII));
+
+        Tweak tweak = Tweak.of("0000000000000000");
+        ByteBuffer direct = ByteBuffer.allocateDirect(29);
+        direct.put("89012123456789000000789000000".getBytes(StandardCharsets.US_ASCII)).flip();
+        c.encrypt(direct, tweak);
+        byte[] result = new byte[29];
+        direct.flip();
+        direct.get(result);
+        assertEquals("34695224821734535122613701434", new String(result, StandardCharsets.US_ASCII));
+        direct.flip();
+        c.decrypt(direct, tweak);
+        direct.flip();
+        direct.get(result);
+        assertEquals("89012123456789000000789000000", new String(result, StandardCharsets.US_ASCII));
+
+        assertThrows(IllegalArgumentException.class, () -> c.encrypt(record, 0, 18, record, 0));
+        assertThrows(ReadOnlyBufferException.class, () -> c.encrypt(ByteBuffer.wrap(record, 3, 18).asReadOnlyBuffer()));
+        assertThrows(ReadOnlyBufferException.class, () -> c.decrypt(ByteBuffer.wrap(record).asReadOnlyBuffer()));
+        FF3Cipher wide = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73", "⁰¹²³⁴⁵⁶⁷⁸⁹");
+        assertThrows(UnsupportedOperationException.class, () -> wide.encrypt(record, 3, 18, record, 3));
+    }
+
+    @Test
+    public void testLongApi() throws Exception {
+        FF3Cipher c = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73");
+        assertEquals(750918814058654607L, c.encryptLong(890121234567890000L, 18));
+        assertEquals(890121234567890000L, c.decryptLong(750918814058654607L, 18));
+        assertEquals(18989839189395384L, c.encryptLong(890121234567890000L, 18, Tweak.of("9A768A92F60E12D8")));
+
+        // leading zeros are part of the width
+        long ct = c.encryptLong(1234L, 9);
+        assertEquals(Long.parseLong(c.encrypt("000001234")), ct);
+        assertEquals(1234L, c.decryptLong(ct, 9));
+
+        String alphabet = FF3Cipher.DIGITS + FF3Cipher.ASCII_LOWERCASE;
+        FF3Cipher c36 = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73", alphabet);
+        assertEquals(Long.parseLong(c36.encrypt("00xyz123456"), 36), c36.encryptLong(Long.parseLong("xyz123456", 36), 11));
+
+        assertThrows(IllegalArgumentException.class, () -> c.encryptLong(1000000L, 6));
+        assertThrows(IllegalArgumentException.class, () -> c.encryptLong(-1L, 6));
+        assertThrows(IllegalArgumentException.class, () -> c.encryptLong(1L, 19));
+        assertThrows(IllegalArgumentException.class, () -> c.encryptLong(1L, 5));
+    }
+
+    @Test
+    public void testInvalidPlaintext() {
         FF3Cipher c = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73", 10);
-        c.encrypt("222-22-2222");
-    }*/
+        assertThrows(IllegalArgumentException.class, () -> c.encrypt("222-22-2222"));
+        assertThrows(IllegalArgumentException.class, () -> c.decrypt("222-22-2222"));
+    }
+
+    @Test
+    public void testDuplicateAlphabet() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73", "0123456789A0"));
+    }
 
     @Test
     public void testEncodeBigInt() {
@@ -173,6 +466,21 @@ public class FF3CipherTest {
         assertEquals(new BigInteger("2658354847544284194395037922"), (decode_int("2658354847544284194395037922", "0123456789")));
     }
 
+    @Test
+    public void testLongFieldConversions() {
+        // 56-digit account references and radix 36 values span several long chunks
+        String pt = "60761757463116869318437658042297305934914824457484538562";
+        assertEquals(new BigInteger(pt), decode_int(pt, "0123456789"));
+        assertEquals(pt, reverseString(encode_int_r(new BigInteger(pt), "0123456789", pt.length())));
+        assertEquals("000" + pt, reverseString(encode_int_r(new BigInteger(pt), "0123456789", pt.length() + 3)));
+
+        String alphabet = "0123456789abcdefghijklmnopqrstuvwxyz";
+        String value = "zyxwvutsrqponmlkjihgfedcba9876543210";
+        assertEquals(new BigInteger(value, 36), decode_int(value, alphabet));
+        assertEquals(value, reverseString(encode_int_r(new BigInteger(value, 36), alphabet, value.length())));
+        assertEquals(BigInteger.ZERO, decode_int("", alphabet));
+    }
+
     @Test
     public void testNistFF3() throws Exception {
         // NIST FF3-AES 128, 192, 256
@@ -249,4 +557,76 @@ public class FF3CipherTest {
         String plaintext = c.decrypt(ciphertext);
         assertEquals(pt, plaintext);
     }
+
+    @Test
+    public void testTweak() throws Exception {
+        String[] testVector = TestVectors[1];
+        FF3Cipher c = new FF3Cipher(testVector[Tkey], "D8E7920AFA330A73", Integer.parseInt(testVector[Tradix]));
+        Tweak tweak = Tweak.of(testVector[Ttweak]);
+        assertEquals(tweak, Tweak.of(0x9A768A92F60E12D8L));
+        assertEquals(tweak, Tweak.of(FF3Cipher.hexStringToByteArray(testVector[Ttweak])));
+        assertEquals(testVector[Ttweak], tweak.toString());
+        assertFalse(tweak.isFF3_1());
+        assertTrue(Tweak.of("D8E7920AFA330A").isFF3_1());
+
+        String ciphertext = c.encrypt(testVector[Tplaintext], tweak);
+        assertEquals(testVector[Tciphertext], ciphertext);
+        assertEquals(testVector[Tplaintext], c.decrypt(ciphertext, tweak));
+
+        // the cipher's own tweak is unchanged
+        assertEquals(TestVectors[0][Tciphertext], c.encrypt(testVector[Tplaintext]));
+        assertEquals("477064185124354662", c.encrypt(testVector[Tplaintext], Tweak.of("D8E7920AFA330A")));
+
+        // Even rounds use Tr XOR i, odd rounds Tl XOR i, with FF3-1 tweaks expanded first
+        Tweak nist = Tweak.of("D8E7920AFA330A73");
+        assertEquals(0xFA330A73, nist.roundPrefix(0));
+        assertEquals(0xD8E7920B, nist.roundPrefix(1));
+        assertEquals(0xFA330A75, nist.roundPrefix(6));
+        Tweak ff3_1 = Tweak.of("D8E7920AFA330A");
+        assertEquals(0xFA330AA0, ff3_1.roundPrefix(0));
+        assertEquals(0xD8E79201, ff3_1.roundPrefix(1));
+
+        assertThrows(IllegalArgumentException.class, () -> Tweak.of("D8E7920AFA33"));
+        assertThrows(IllegalArgumentException.class, () -> Tweak.of(new byte[9]));
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        // One shared cipher, with the default tweak and per-call tweaks interleaved across threads
+        FF3Cipher c = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73", 10);
+        String[] tweaks = {"9A768A92F60E12D8", "0000000000000000", "D8E7920AFA330A"};
+        String[] plaintexts = new String[200];
+        String[][] expected = new String[tweaks.length + 1][plaintexts.length];
+        for (int j = 0; j < plaintexts.length; j++) {
+            plaintexts[j] = String.format("%018d", 4000000000000000L + 7919L * j * j);
+            expected[0][j] = c.encrypt(plaintexts[j]);
+            for (int t = 0; t < tweaks.length; t++) {
+                expected[t + 1][j] = c.encrypt(plaintexts[j], tweaks[t]);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                final int offset = thread;
+                futures.add(executor.submit(() -> {
+                    for (int k = 0; k < 20 * plaintexts.length; k++) {
+                        int j = (k + offset) % plaintexts.length;
+                        int t = (k + offset) % (tweaks.length + 1);
+                        String ciphertext = (t == 0) ? c.encrypt(plaintexts[j]) : c.encrypt(plaintexts[j], tweaks[t - 1]);
+                        assertEquals(expected[t][j], ciphertext);
+                        String plaintext = (t == 0) ? c.decrypt(ciphertext) : c.decrypt(ciphertext, tweaks[t - 1]);
+                        assertEquals(plaintexts[j], plaintext);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
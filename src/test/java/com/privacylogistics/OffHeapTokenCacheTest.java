@@ -0,0 +1,90 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapTokenCacheTest {
+
+    static final Tweak TWEAK = Tweak.of("D8E7920AFA330A73");
+
+    @Test
+    public void testGetPut() {
+        OffHeapTokenCache cache = new OffHeapTokenCache(FF3Cipher.DIGITS, 100);
+        assertNull(cache.get(TWEAK, "123456"));
+        cache.put(TWEAK, "123456", "654321");
+        assertEquals("654321", cache.get(TWEAK, "123456"));
+        assertNull(cache.get(Tweak.of("9A768A92F60E12D8"), "123456"));
+        assertNull(cache.get(TWEAK, "1234567"));
+        cache.put(TWEAK, "123456", "111111");
+        assertEquals("111111", cache.get(TWEAK, "123456"));
+        assertEquals(1, cache.size());
+
+        // a 56-bit tweak with the same bits as a 64-bit one is a different key
+        cache.put(Tweak.of("00D8E7920AFA33"), "123456", "222222");
+        cache.put(Tweak.of("0000D8E7920AFA33"), "123456", "333333");
+        assertEquals("222222", cache.get(Tweak.of("00D8E7920AFA33"), "123456"));
+        assertEquals("333333", cache.get(Tweak.of("0000D8E7920AFA33"), "123456"));
+    }
+
+    @Test
+    public void testNotCached() {
+        OffHeapTokenCache cache = new OffHeapTokenCache(FF3Cipher.DIGITS, 100);
+        cache.put(TWEAK, "12-456", "654321");
+        cache.put(TWEAK, "123456", "65432X");
+        cache.put(TWEAK, "123456", "6543210");
+        assertNull(cache.get(TWEAK, "12-456"));
+        assertNull(cache.get(TWEAK, "123456"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testBounded() {
+        OffHeapTokenCache cache = new OffHeapTokenCache(FF3Cipher.DIGITS, 1000);
+        for (int j = 0; j < 100000; j++) {
+            String s = String.format("%07d", j);
+            cache.put(TWEAK, s, new StringBuilder(s).reverse().toString());
+        }
+        assertTrue(cache.size() <= 1000);
+        assertTrue(cache.size() > 900);
+        assertEquals(1000 * (9 + 2 * 7), cache.offHeapBytes());
+
+        // whatever survived maps to the right value
+        int found = 0;
+        for (int j = 0; j < 100000; j++) {
+            String s = String.format("%07d", j);
+            String t = cache.get(TWEAK, s);
+            if (t != null) {
+                assertEquals(new StringBuilder(s).reverse().toString(), t);
+                found++;
+            }
+        }
+        assertEquals(cache.size(), found);
+    }
+
+    @Test
+    public void testWithCachingCipher() throws Exception {
+        FF3Cipher cipher = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73");
+        CachingFF3Cipher c = new CachingFF3Cipher(cipher,
+                new OffHeapTokenCache(FF3Cipher.DIGITS, 1000), new OffHeapTokenCache(FF3Cipher.DIGITS, 1000));
+        assertEquals("750918814058654607", c.encrypt("890121234567890000"));
+        assertEquals("890121234567890000", c.decrypt("750918814058654607"));
+        assertEquals(1, c.hits());
+    }
+}
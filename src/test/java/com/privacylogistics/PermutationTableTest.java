@@ -0,0 +1,61 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PermutationTableTest {
+
+    @Test
+    public void testTable() throws Exception {
+        FF3Cipher c = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73");
+        PermutationTable table = c.permutationTable(6);
+        assertEquals(6, table.length());
+        assertEquals(1000000, table.size());
+
+        for (int p = 0; p < table.size(); p += 9973) {
+            assertEquals(c.encryptLong(p, 6), table.encrypt(p));
+            assertEquals(p, table.decrypt(table.encrypt(p)));
+        }
+        assertEquals(c.encrypt("000042"), table.encrypt("000042"));
+        assertEquals("000042", table.decrypt(table.encrypt("000042")));
+
+        Tweak tweak = Tweak.of("9A768A92F60E12D8");
+        PermutationTable other = c.permutationTable(6, tweak, PermutationTable.DEFAULT_MAX_BYTES);
+        assertEquals(c.encrypt("123456", tweak), other.encrypt("123456"));
+    }
+
+    @Test
+    public void testLimits() {
+        FF3Cipher c = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73");
+        assertThrows(IllegalArgumentException.class, () -> c.permutationTable(6, 1000000));
+        // radix 10 length 8 needs 800 MB, over the 128 MiB default
+        assertThrows(IllegalArgumentException.class, () -> c.permutationTable(8));
+        assertThrows(IllegalArgumentException.class, () -> c.permutationTable(10, Long.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> c.permutationTable(5, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testInvalidInput() throws Exception {
+        FF3Cipher c = new FF3Cipher("EF4359D8D580AA4F7F036D6F04FC6A94", "D8E7920AFA330A73");
+        PermutationTable table = c.permutationTable(6, PermutationTable.DEFAULT_MAX_BYTES);
+        assertThrows(IllegalArgumentException.class, () -> table.encrypt("1234567"));
+        assertThrows(IllegalArgumentException.class, () -> table.encrypt("12345X"));
+    }
+}
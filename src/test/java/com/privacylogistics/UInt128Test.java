@@ -0,0 +1,111 @@
+package com.privacylogistics;
+
+/*
+ * Format-Preserving Encryption for FF3
+ *
+ * Copyright (c) 2021 Schoening Consulting LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+public class UInt128Test {
+
+    static BigInteger unsigned(long hi, long lo) {
+        return new BigInteger(Long.toUnsignedString(hi)).shiftLeft(64).add(new BigInteger(Long.toUnsignedString(lo)));
+    }
+
+    @Test
+    public void testUnsignedDivision() {
+        long[] values = {0, 1, 12345, Long.MAX_VALUE, Long.MIN_VALUE, -1L, -12345L};
+        long[] divisors = {1, 7, 10, 1000000007L, Long.MAX_VALUE};
+        for (long n : values) {
+            for (long d : divisors) {
+                assertEquals(Long.divideUnsigned(n, d), UInt128.divideUnsigned(n, d));
+                assertEquals(Long.remainderUnsigned(n, d), UInt128.remainderUnsigned(n, d));
+            }
+        }
+    }
+
+    @Test
+    public void testRemainder() {
+        Random random = new Random(42);
+        long[] moduli = {1, 10, 1000000L, 999999999999999999L, 1000000000000000000L, Long.MAX_VALUE,
+                1L << 32, (1L << 32) + 1, 26L * 26 * 26 * 26 * 26 * 26 * 26 * 26 * 26 * 26};
+        for (long m : moduli) {
+            for (int j = 0; j < 1000; j++) {
+                long hi = random.nextLong(), lo = random.nextLong();
+                BigInteger expected = unsigned(hi, lo).mod(BigInteger.valueOf(m));
+                assertEquals(expected.longValue(), UInt128.remainder(hi, lo, m));
+            }
+            assertEquals(unsigned(-1L, -1L).mod(BigInteger.valueOf(m)).longValue(), UInt128.remainder(-1L, -1L, m));
+            assertEquals(0, UInt128.remainder(0, 0, m));
+        }
+    }
+
+    @Test
+    public void testMultiplyHigh() {
+        Random random = new Random(7);
+        for (int j = 0; j < 1000; j++) {
+            long x = random.nextLong(), y = random.nextLong();
+            BigInteger product = unsigned(0, x).multiply(unsigned(0, y));
+            assertEquals(product.shiftRight(64).longValue(), UInt128.multiplyHigh(x, y));
+        }
+        assertEquals(-2L, UInt128.multiplyHigh(-1L, -1L));
+    }
+
+    @Test
+    public void testDivide() {
+        Random random = new Random(11);
+        long[] divisors = {10, 1000000000000000000L, 3656158440062976L, Long.MAX_VALUE};
+        for (long m : divisors) {
+            for (int j = 0; j < 1000; j++) {
+                long hi = UInt128.remainderUnsigned(random.nextLong(), m), lo = random.nextLong();
+                BigInteger expected = unsigned(hi, lo).divide(BigInteger.valueOf(m));
+                assertEquals(expected.longValue(), UInt128.divide(hi, lo, m));
+            }
+        }
+    }
+
+    @Test
+    public void testWideRemainder() {
+        Random random = new Random(13);
+        int[][] domains = {{10, 18}, {10, 19}, {10, 28}, {36, 18}, {62, 16}, {64, 16}, {256, 8}, {2, 96}};
+        for (int[] domain : domains) {
+            BigInteger m = BigInteger.valueOf(domain[0]).pow(domain[1]);
+            long[] mod = UInt128.pow(domain[0], domain[1]);
+            assertEquals(m, unsigned(mod[0], mod[1]));
+            double mDouble = UInt128.toDouble(mod[0], mod[1]);
+            for (int j = 0; j < 1000; j++) {
+                long hi = random.nextLong(), lo = random.nextLong();
+                long[] x = {hi, lo};
+                UInt128.remainder(x, mod[0], mod[1], mDouble);
+                assertEquals(unsigned(hi, lo).mod(m), unsigned(x[0], x[1]));
+
+                // (x + y) mod m and (x - y) mod m
+                long[] y = {random.nextLong(), random.nextLong()};
+                UInt128.remainder(y, mod[0], mod[1], mDouble);
+                long[] sum = x.clone(), difference = x.clone();
+                UInt128.addMod(sum, y, mod);
+                UInt128.subtractMod(difference, y, mod);
+                assertEquals(unsigned(x[0], x[1]).add(unsigned(y[0], y[1])).mod(m), unsigned(sum[0], sum[1]));
+                assertEquals(unsigned(x[0], x[1]).subtract(unsigned(y[0], y[1])).mod(m),
+                        unsigned(difference[0], difference[1]));
+            }
+        }
+    }
+}